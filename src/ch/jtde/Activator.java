@@ -14,6 +14,8 @@ import org.osgi.framework.*;
 import ch.jtde.actions.*;
 import ch.jtde.internal.actions.*;
 import ch.jtde.internal.model.*;
+import ch.jtde.internal.utils.*;
+import ch.jtde.internal.xstream.*;
 import ch.jtde.model.*;
 
 /**
@@ -35,6 +37,18 @@ public class Activator extends AbstractUIPlugin {
     /** The action manager. */
     private final ActionManager actions = new ActionManager();
 
+    /** The type cache. */
+    private final TypeCache types = new TypeCache();
+
+    /** The class definition registry. */
+    private final ClassDefinitionRegistry definitions = new ClassDefinitionRegistry(types);
+
+    /** The persistent type metadata cache. */
+    private final TypeMetadataCache metadata = new TypeMetadataCache(types);
+
+    /** The snapshot cache. */
+    private final SnapshotCache snapshots = new SnapshotCache();
+
     /**
      * The constructor
      */
@@ -51,6 +65,11 @@ public class Activator extends AbstractUIPlugin {
         manager.initialize();
         analyzer.initialize();
         actions.initialize();
+        types.initialize();
+        final int configuration = 31 * manager.getConfigurationStamp() + getBundle().getVersion().toString().hashCode();
+        metadata.initialize(getStateLocation().toFile(), configuration);
+        snapshots.initialize(getStateLocation().append("snapshots").toFile(), configuration);
+        ExtensionPointHelper.addRegistryListeners();
     }
 
     /**
@@ -58,6 +77,9 @@ public class Activator extends AbstractUIPlugin {
      */
     @Override
     public void stop(BundleContext context) throws Exception {
+        ExtensionPointHelper.removeRegistryListeners();
+        metadata.dispose();
+        types.dispose();
         plugin = null;
         super.stop(context);
     }
@@ -104,6 +126,50 @@ public class Activator extends AbstractUIPlugin {
         return plugin.analyzer;
     }
 
+    /**
+     * Returns the {@link TypeCache} of this plugin.
+     * 
+     * @return The cache
+     */
+    public static TypeCache getTypeCache() {
+        if (plugin == null)
+            throw new IllegalStateException("The plugin is currently not active!");
+        return plugin.types;
+    }
+
+    /**
+     * Returns the {@link ClassDefinitionRegistry} of this plugin.
+     * 
+     * @return The registry
+     */
+    public static ClassDefinitionRegistry getDefinitionRegistry() {
+        if (plugin == null)
+            throw new IllegalStateException("The plugin is currently not active!");
+        return plugin.definitions;
+    }
+
+    /**
+     * Returns the {@link TypeMetadataCache} of this plugin.
+     * 
+     * @return The cache
+     */
+    public static TypeMetadataCache getMetadataCache() {
+        if (plugin == null)
+            throw new IllegalStateException("The plugin is currently not active!");
+        return plugin.metadata;
+    }
+
+    /**
+     * Returns the {@link SnapshotCache} of this plugin.
+     * 
+     * @return The cache
+     */
+    public static SnapshotCache getSnapshotCache() {
+        if (plugin == null)
+            throw new IllegalStateException("The plugin is currently not active!");
+        return plugin.snapshots;
+    }
+
     /**
      * Returns an image descriptor for the image file at the given plug-in relative path
      * 
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.actions;
+
+import java.io.*;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.jface.action.*;
+import org.eclipse.jface.viewers.*;
+import org.eclipse.swt.*;
+import org.eclipse.swt.widgets.*;
+import org.eclipse.ui.*;
+import ch.jtde.internal.utils.*;
+import ch.jtde.internal.xstream.*;
+import ch.jtde.model.*;
+
+/**
+ * Popup menu action converting the selected data files between the {@link DataFormat#XML} and the {@link DataFormat#BINARY} format.<br>
+ * The converted content gets written into a file with the same name but the extension of the other format.
+ * 
+ * @author M. Hautle
+ */
+public class ConvertFormatAction implements IObjectActionDelegate {
+    /** The current selection. */
+    private IStructuredSelection selection = StructuredSelection.EMPTY;
+
+    /** The shell to use. */
+    private Shell shell;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+        shell = targetPart.getSite().getShell();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void selectionChanged(IAction action, ISelection selection) {
+        this.selection = selection instanceof IStructuredSelection ? (IStructuredSelection) selection : StructuredSelection.EMPTY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run(IAction action) {
+        for (Object o : selection.toArray()) {
+            if (!(o instanceof IFile))
+                continue;
+            final IFile file = (IFile) o;
+            try {
+                convert(file);
+            } catch (CoreException e) {
+                EclipseUtils.showError(shell, "Error while converting " + file.getName(), e);
+            } catch (IOException e) {
+                EclipseUtils.showError(shell, "Error while converting " + file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Converts the given file into the other format.
+     * 
+     * @param file The file to convert
+     * @throws CoreException If something went wrong
+     * @throws IOException If something went wrong
+     */
+    @SuppressWarnings("rawtypes")
+    private void convert(IFile file) throws CoreException, IOException {
+        final File src = file.getLocation().toFile();
+        final DataFormat format = DataFormat.forFile(src) == DataFormat.XML ? DataFormat.BINARY : DataFormat.XML;
+        final IFile dest = ResourcesPlugin.getWorkspace().getRoot().getFile(file.getFullPath().removeFileExtension().addFileExtension(format.getExtension()));
+        // the format is detected from the content, so the extension may already be the one of the other format
+        if (dest.equals(file)) {
+            final String msg = file.getName() + " has the extension of the " + format + " format but is not stored in it. Rename it to convert it.";
+            EclipseUtils.showMessageBox(shell, "Convert", msg, SWT.ICON_INFORMATION | SWT.OK);
+            return;
+        }
+        final String question = dest.getName() + " already exists. Overwrite it?";
+        if (dest.exists() && EclipseUtils.showMessageBox(shell, "Convert", question, SWT.YES | SWT.NO | SWT.ICON_QUESTION) != SWT.YES)
+            return;
+        final XStreamAdapter adapter = new XStreamAdapter(EclipseUtils.getJavaProject(file.getProject()));
+        final IDataElement el = adapter.read(file.getContents(), src);
+        adapter.write(el, dest.getLocation().toFile(), format);
+        dest.getParent().refreshLocal(IResource.DEPTH_ONE, null);
+    }
+}
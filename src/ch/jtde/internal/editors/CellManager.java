@@ -32,6 +32,9 @@ class CellManager {
     /** The editor. */
     private final Editor editor;
 
+    /** The editor model. */
+    private final EditorModel model;
+
     /** The already initialized editors. */
     @SuppressWarnings("rawtypes")
     private Map<Class, ICellEditor> editorChache = new HashMap<Class, ICellEditor>();
@@ -40,9 +43,11 @@ class CellManager {
      * Default constructor.
      * 
      * @param parent
+     * @param model The editor model
      */
-    public CellManager(TableWidget parent) {
+    public CellManager(TableWidget parent, EditorModel model) {
         this.parent = parent.getTable();
+        this.model = model;
         editor = new Editor(parent.getViewer());
     }
 
@@ -230,6 +235,8 @@ class CellManager {
         @Override
         @SuppressWarnings({ "rawtypes", "unchecked" })
         protected boolean canEdit(Object element) {
+            if (!model.isEditable())
+                return false;
             final IValueElement el = getValueElement(element);
             if (el == null)
                 return false;
@@ -31,6 +31,9 @@ class ContextMenu implements IMenuListener, ISelectionChangedListener, IEditorMo
     /** The owning editor. */
     private final IDataEditor editor;
 
+    /** The editor model. */
+    private final EditorModel model;
+
     /** The current model. */
     private IDataElement<IAttribute> currentElement;
 
@@ -48,7 +51,7 @@ class ContextMenu implements IMenuListener, ISelectionChangedListener, IEditorMo
      * @param model The table model
      */
     public static void createMenu(IDataEditor editor, TableWidget viewer, EditorModel model) {
-        final ContextMenu ctx = new ContextMenu(editor);
+        final ContextMenu ctx = new ContextMenu(editor, model);
         final MenuManager manager = new MenuManager();
         manager.setRemoveAllWhenShown(true);
         manager.addMenuListener(ctx);
@@ -62,9 +65,11 @@ class ContextMenu implements IMenuListener, ISelectionChangedListener, IEditorMo
      * Hidden constructor.
      * 
      * @param editor The owning editor
+     * @param model The editor model
      */
-    private ContextMenu(IDataEditor editor) {
+    private ContextMenu(IDataEditor editor, EditorModel model) {
         this.editor = editor;
+        this.model = model;
     }
 
     /**
@@ -73,6 +78,9 @@ class ContextMenu implements IMenuListener, ISelectionChangedListener, IEditorMo
     @Override
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public void menuAboutToShow(IMenuManager manager) {
+        // the root element gets still read
+        if (!model.isEditable())
+            return;
         // add 'compatible' actions
         for (IDataElementAction a : actions)
             if (a.isEnabledFor(currentElement, selectedAttribute))
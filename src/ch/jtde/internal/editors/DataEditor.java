@@ -13,6 +13,7 @@ import java.lang.reflect.*;
 import java.util.*;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
 import org.eclipse.jdt.core.*;
 import org.eclipse.jdt.core.search.*;
 import org.eclipse.jface.operation.*;
@@ -63,18 +64,46 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
     /** Flag indicating if the editor is dirty. */
     private boolean dirty;
 
+    /** Flag indicating if the model gets still read. */
+    private volatile boolean loading;
+
+    /** The job reading the model or null. */
+    private Job readJob;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void doSave(IProgressMonitor monitor) {
+        // the published part of the model must not be saved
+        if (loading || model.getRootElement() == null) {
+            final String msg = loading ? "The file is still being read." : "The file could not be read.";
+            EclipseUtils.showMessageBox(getShell(), "Save", msg, SWT.ICON_INFORMATION | SWT.OK);
+            monitor.setCanceled(true);
+            return;
+        }
+        final IFile f = getInputFile();
         try {
-            final IFile f = getInputFile();
-            elementIO.write(model.getRootElement(), f.getLocation().toFile());
-            f.refreshLocal(IResource.DEPTH_ONE, monitor);
+            getProgressService().run(true, true, new IRunnableWithProgress() {
+                @Override
+                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                    try {
+                        elementIO.write(model.getRootElement(), f.getLocation().toFile(), monitor);
+                    } catch (IOException e) {
+                        throw new InvocationTargetException(e);
+                    } catch (OperationCanceledException e) {
+                        throw new InterruptedException();
+                    }
+                }
+            });
+            // the parent contains also the side-car file
+            f.getParent().refreshLocal(IResource.DEPTH_ONE, monitor);
             setDirty(false);
-        } catch (IOException e) {
-            EclipseUtils.showError(getShell(), "Error while saving", e);
+        } catch (InvocationTargetException e) {
+            EclipseUtils.showError(getShell(), "Error while saving", e.getCause());
+        } catch (InterruptedException e) {
+            // canceled - the file was left untouched
+            monitor.setCanceled(true);
         } catch (CoreException e) {
             EclipseUtils.showError(getShell(), "Error while saving", e);
         }
@@ -128,6 +157,9 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
      */
     @Override
     public void dispose() {
+        // stops reading
+        if (readJob != null)
+            readJob.cancel();
         project = null;
         super.dispose();
     }
@@ -175,7 +207,7 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
     private TableWidget createViewer(Composite parent) {
         final TableWidget viewer = new TableWidget(parent, SWT.FILL | SWT.FULL_SELECTION);
         final Table table = viewer.getTable();
-        CellManager cellManager = new CellManager(viewer);
+        CellManager cellManager = new CellManager(viewer, model);
         viewer.addColumn("Name", 100);
         viewer.addColumn("Type", 100);
         viewer.addColumn("Declaring Type", 100);
@@ -187,6 +219,9 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
                 if (sel.size() != 1)
                     return;
                 final IAttribute attr = (IAttribute) sel.getFirstElement();
+                // the root element gets still read - stepping into the published children is fine
+                if (!model.isEditable() && attr.getValue() == null)
+                    return;
                 // handler insertion attribute differently
                 if (InsertAttribute.ME == attr) {
                     extendCurrentElement();
@@ -222,27 +257,96 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
     }
 
     /**
-     * Reads the model from the editor input file.
+     * Reads the model from the editor input file in a job.<br>
+     * The first children of a root collection or map get displayed while the rest of the file gets still read (see {@link #publish(IDataElement, int)}).
+     * The editor gets closed if the job was canceled, the published part of the model gets dropped if the file could not be read.
      */
     private void readModel() {
-        final IWorkbenchSiteProgressService s = getProgressService();
-        try {
-            s.run(true, false, new IRunnableWithProgress() {
-                @Override
-                @SuppressWarnings("unchecked")
-                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-                    try {
-                        setModel(elementIO.read(getInputFile().getContents()));
-                    } catch (CoreException e) {
-                        throw new InvocationTargetException(e);
-                    }
+        loading = true;
+        readJob = new Job("Reading " + getInputFile().getName()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    final IFile file = getInputFile();
+                    setModel(elementIO.read(file.getContents(), file.getLocation().toFile(), new IReadListener() {
+                        @Override
+                        public void childrenRead(IDataElement<IAttribute> root, int count) {
+                            publish(root, count);
+                        }
+                    }, monitor));
+                } catch (OperationCanceledException e) {
+                    close();
+                    return Status.CANCEL_STATUS;
+                } catch (CoreException e) {
+                    showReadError(e);
+                } catch (IOException e) {
+                    showReadError(e);
+                } catch (RuntimeException e) {
+                    showReadError(e);
+                } finally {
+                    loading = false;
                 }
-            });
-        } catch (InvocationTargetException e1) {
-            EclipseUtils.showError(getShell(), "Error while parsing the file", e1.getCause());
-        } catch (InterruptedException e1) {
-            // should not be thrown
-        }
+                return Status.OK_STATUS;
+            }
+        };
+        getProgressService().schedule(readJob);
+    }
+
+    /**
+     * Closes this editor (without saving).
+     */
+    private void close() {
+        EclipseUtils.synchSWTCall(new Runnable() {
+            @Override
+            public void run() {
+                if (!viewer.getTable().isDisposed())
+                    getSite().getPage().closeEditor(DataEditor.this, false);
+            }
+        });
+    }
+
+    /**
+     * Drops the published part of the model and displays an error which occoured while reading the model.
+     * 
+     * @param e The error
+     */
+    private void showReadError(final Throwable e) {
+        EclipseUtils.synchSWTCall(new Runnable() {
+            @Override
+            public void run() {
+                if (viewer.getTable().isDisposed())
+                    return;
+                if (model.getRootElement() != null) {
+                    stepTo(0);
+                    viewer.setInput(null);
+                }
+                EclipseUtils.showError(getShell(), "Error while parsing the file", e);
+            }
+        });
+    }
+
+    /**
+     * Displays the given number of children of the root element while the rest of the model gets still read.<br>
+     * This set operations were executed in the SWT thread.
+     * 
+     * @param root The root element
+     * @param count The number of completely read children
+     */
+    private void publish(final IDataElement<IAttribute> root, final int count) {
+        EclipseUtils.synchSWTCall(new Runnable() {
+            @Override
+            public void run() {
+                if (viewer.getTable().isDisposed())
+                    return;
+                model.setPublished(count);
+                if (model.getRootElement() == root)
+                    return;
+                viewer.setInput(root);
+                viewer.setItemCount(model.getRowCount());
+                model.addModelListener(DataEditor.this);
+            }
+        });
     }
 
     /**
@@ -255,9 +359,18 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
         EclipseUtils.synchSWTCall(new Runnable() {
             @Override
             public void run() {
+                loading = false;
+                if (viewer.getTable().isDisposed())
+                    return;
+                final EditorModel m = DataEditor.this.model;
+                // the published root element gets just completed
+                final boolean published = m.getRootElement() == model;
+                m.setPublished(-1);
+                if (published)
+                    return;
                 viewer.setInput(model);
                 viewer.setItemCount(model.getChildCount());
-                DataEditor.this.model.addModelListener(DataEditor.this);
+                m.addModelListener(DataEditor.this);
             }
         });
     }
@@ -306,12 +419,15 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
     private void createAttributeContent(final IAttribute attr, final IType concreteType) {
         try {
             final IWorkbenchSiteProgressService s = getProgressService();
-            s.run(true, false, new IRunnableWithProgress() {
+            s.run(true, true, new IRunnableWithProgress() {
                 @Override
-                public void run(IProgressMonitor monitor) throws InvocationTargetException {
+                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
                     // create attribute content
                     try {
-                        attr.setValue(createElement(attr.getLowerBound(), concreteType, new SubProgressMonitor(monitor, 0)));
+                        final IDataElement<IAttribute> value = createElement(attr.getLowerBound(), concreteType, new SubProgressMonitor(monitor, 0));
+                        if (monitor.isCanceled())
+                            throw new InterruptedException();
+                        attr.setValue(value);
                         EclipseUtils.synchSWTCall(new Runnable() {
                             public void run() {
                                 stepInto(attr);
@@ -319,13 +435,15 @@ public class DataEditor extends EditorPart implements IDataEditor, IEditorModelL
                         });
                     } catch (JavaModelException e) {
                         throw new InvocationTargetException(e);
+                    } catch (OperationCanceledException e) {
+                        throw new InterruptedException();
                     }
                 }
             });
         } catch (InvocationTargetException e1) {
             EclipseUtils.showError(getShell(), "Error while creating element content", e1.getCause());
         } catch (InterruptedException e1) {
-            // should not be thrown
+            // canceled - the attribute stays empty
         }
     }
 
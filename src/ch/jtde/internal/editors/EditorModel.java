@@ -36,6 +36,12 @@ class EditorModel implements IStructuredContentProvider {
     /** The currently displayed part of the model. */
     private IDataElement<IAttribute> currentPart;
 
+    /** The number of published children of {@link #rootModel} or -1 if the root element was completely read. */
+    private int published = -1;
+
+    /** The published children of {@link #rootModel} or null if the root element was completely read (see {@link #takeSnapshot()}). */
+    private IAttribute[] publishedChildren;
+
     /**
      * Steps into the given element.
      * 
@@ -76,11 +82,11 @@ class EditorModel implements IStructuredContentProvider {
      */
     @Override
     public Object[] getElements(Object inputElement) {
-        final int cnt = currentPart.getChildCount();
-        final boolean ext = currentPart instanceof IExtendableDataElement;
+        final int cnt = getChildCount(currentPart);
+        final boolean ext = isExtendable(currentPart);
         final Object[] data = new Object[cnt + (ext ? 1 : 0)];
         for (int i = 0; i < cnt; i++)
-            data[i] = currentPart.getChild(i);
+            data[i] = getChild(currentPart, i);
         // append the insert line for extendable elements
         if (ext)
             data[cnt] = InsertAttribute.ME;
@@ -93,8 +99,94 @@ class EditorModel implements IStructuredContentProvider {
      * @return The number of rows
      */
     int getRowCount() {
-        final int cnt = currentPart.getChildCount();
-        return currentPart instanceof IExtendableDataElement ? cnt + 1 : cnt;
+        final int cnt = getChildCount(currentPart);
+        return isExtendable(currentPart) ? cnt + 1 : cnt;
+    }
+
+    /**
+     * Returns the number of displayed children of the given element.
+     * 
+     * @param el The element
+     * @return The number of children (only the published ones for {@link #rootModel})
+     */
+    @SuppressWarnings("rawtypes")
+    private int getChildCount(IDataElement el) {
+        return publishedChildren != null && el == rootModel ? publishedChildren.length : el.getChildCount();
+    }
+
+    /**
+     * Returns the given child of the given element.<br>
+     * The children of {@link #rootModel} are taken from {@link #publishedChildren} while the root element gets still read.
+     * 
+     * @param el The element
+     * @param index The index of the child
+     * @return The child
+     */
+    @SuppressWarnings("rawtypes")
+    private IAttribute getChild(IDataElement el, int index) {
+        return publishedChildren != null && el == rootModel ? publishedChildren[index] : el.getChild(index);
+    }
+
+    /**
+     * Copies the published children of {@link #rootModel} into {@link #publishedChildren}.<br>
+     * The reading thread extends the root element without any lock shared with this thread, so it's children may only be accessed while the reading
+     * thread waits for the publication (see {@link #setPublished(int)}).
+     */
+    private void takeSnapshot() {
+        if (published < 0 || rootModel == null) {
+            publishedChildren = null;
+            return;
+        }
+        final IAttribute[] res = new IAttribute[published];
+        for (int i = 0; i < res.length; i++)
+            res[i] = rootModel.getChild(i);
+        publishedChildren = res;
+    }
+
+    /**
+     * Returns wherever the given element may be extended.
+     * 
+     * @param el The element
+     * @return True if it's a {@link IExtendableDataElement} which was completely read
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean isExtendable(IDataElement el) {
+        return el instanceof IExtendableDataElement && (published < 0 || el != rootModel);
+    }
+
+    /**
+     * Sets the number of published children of the root element.<br>
+     * The remaining children get still read by another thread, so they are neither displayed nor observed. The root element gets refreshed if it's the
+     * current element.<br>
+     * Must be called while the reading thread waits for the publication.
+     * 
+     * @param count The number of published children or -1 if the root element was completely read
+     */
+    void setPublished(int count) {
+        published = count;
+        takeSnapshot();
+        if (rootModel != null && currentPart == rootModel)
+            setCurrentElement(rootModel);
+    }
+
+    /**
+     * Returns wherever the root element was completely read.
+     * 
+     * @return True if all children of the root element are published
+     */
+    boolean isComplete() {
+        return published < 0;
+    }
+
+    /**
+     * Returns wherever the rows of the current element may be changed.<br>
+     * The root element gets extended by the reading thread until it was completely read (see {@link #isComplete()}), so neither it's structure nor it's
+     * attributes may be changed meanwhile.
+     * 
+     * @return True if the current element may be edited
+     */
+    boolean isEditable() {
+        return isComplete() || currentPart != rootModel;
     }
 
     /**
@@ -132,9 +224,16 @@ class EditorModel implements IStructuredContentProvider {
     public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
         rootModel = (IDataElement<IAttribute>) newInput;
         path.clear();
-        path.add(rootModel);
-        if (newInput != null)
+        takeSnapshot();
+        if (newInput != null) {
+            path.add(rootModel);
             setCurrentElement(rootModel);
+            return;
+        }
+        // the model was dropped
+        published = -1;
+        currentPart = null;
+        listenerManager.setElement(null);
     }
 
     /**
@@ -160,6 +259,12 @@ class EditorModel implements IStructuredContentProvider {
         /** The currently observed element or null. */
         private IDataElement element;
 
+        /** The number of observed attributes of a not extendable {@link #element}. */
+        private int count;
+
+        /** Flag indicating if {@link #element} is observed as {@link IExtendableDataElement}. */
+        private boolean extendable;
+
         /**
          * Sets the element to observe.
          * 
@@ -171,11 +276,13 @@ class EditorModel implements IStructuredContentProvider {
             if (el == null)
                 return;
             // add extendableelement listener
-            if (element instanceof IExtendableDataElement)
+            extendable = isExtendable(el);
+            if (extendable)
                 ((IExtendableDataElement) element).addAttributeChangeListener(this);
             // add attribute listeners
-            for (int i = 0, cnt = el.getChildCount(); i < cnt; i++)
-                el.getChild(i).addPropertyChangeListener(this);
+            count = getChildCount(el);
+            for (int i = 0; i < count; i++)
+                getChild(el, i).addPropertyChangeListener(this);
         }
 
         /**
@@ -185,11 +292,11 @@ class EditorModel implements IStructuredContentProvider {
             if (element == null)
                 return;
             // drop extendableelement listener
-            if (element instanceof IExtendableDataElement)
+            if (extendable)
                 ((IExtendableDataElement) element).removeAttributeChangeListener(this);
-            // drop attribute listeners
-            for (int i = 0, cnt = element.getChildCount(); i < cnt; i++)
-                element.getChild(i).removePropertyChangeListener(this);
+            // drop attribute listeners (the observed extendable elements may have changed meanwhile)
+            for (int i = 0, cnt = extendable ? element.getChildCount() : count; i < cnt; i++)
+                getChild(element, i).removePropertyChangeListener(this);
         }
 
         /**
@@ -64,6 +64,16 @@ abstract class AbstractAttribute implements IAttribute, PropertyChangeListener {
         propertyChangeSupport.firePropertyChange(ATTR_STATE, this.state, this.state = state);
     }
 
+    /**
+     * Sets the state without firing a change event.<br>
+     * Use this only while initializing a element which is not yet visible to any listener.
+     * 
+     * @param state The state.
+     */
+    public void initState(AttributeState state) {
+        this.state = state;
+    }
+
     /**
      * {@inheritDoc}
      */
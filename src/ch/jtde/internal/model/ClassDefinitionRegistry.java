@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.model;
+
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.jdt.core.*;
+import ch.jtde.model.*;
+
+/**
+ * Per project registry of canonical {@link ClassDefinition}s.<br>
+ * Definitions with the same type, category and dimensions are shared, so the elements of large arrays don't look up and hold their own definition and
+ * most {@link ClassDefinition#equals(Object)} calls end at the identity check. The registry gets dropped together with the {@link TypeCache} (see
+ * {@link TypeCache#getGeneration()}), the definitions still held by open models stay equal to the new ones.
+ * 
+ * @author M. Hautle
+ */
+public final class ClassDefinitionRegistry {
+    /** The type cache used for the lookups. */
+    private final TypeCache types;
+
+    /** The canonical definitions by project (the one declaring the type). */
+    private final ConcurrentMap<IJavaProject, ConcurrentMap<Key, ClassDefinition>> definitions =
+            new ConcurrentHashMap<IJavaProject, ConcurrentMap<Key, ClassDefinition>>();
+
+    /** The {@link TypeCache#getGeneration()} for which {@link #definitions} were registered. */
+    private volatile int generation;
+
+    /**
+     * Default constructor.
+     * 
+     * @param types The type cache to use for the lookups
+     */
+    public ClassDefinitionRegistry(TypeCache types) {
+        this.types = types;
+    }
+
+    /**
+     * Returns the definition of the given type as seen from the passed project.<br>
+     * The definition is registered for the project declaring the resolved type, so it's the same one as returned by {@link #get(IType, ElementCategory)}.
+     * 
+     * @param project The base java project (used for the type lookup)
+     * @param name The fully qualified class name
+     * @param category The type category
+     * @param pm A progress monitor or null
+     * @return The definition
+     * @throws TechnicalModelException If an error occoured while looking up the class
+     */
+    public ClassDefinition get(IJavaProject project, String name, ElementCategory category, IProgressMonitor pm) throws TechnicalModelException {
+        return get(findType(project, name), category);
+    }
+
+    /**
+     * Returns the definition of the given type.
+     * 
+     * @param type The eclipse type
+     * @param category The type category
+     * @return The definition
+     */
+    public ClassDefinition get(IType type, ElementCategory category) {
+        final ConcurrentMap<Key, ClassDefinition> defs = getDefinitions(type.getJavaProject());
+        final Key key = new Key(type, category, 0);
+        ClassDefinition def = defs.get(key);
+        if (def == null)
+            def = register(defs, key, ClassDefinition.create(type, category));
+        return def;
+    }
+
+    /**
+     * Returns the definition of an array of the given type.
+     * 
+     * @param type The eclipse type
+     * @param primitiveType True if <code>type</code> is a wrapper for an primitive type
+     * @param dimensions The number of dimensions (>0)
+     * @return The definition
+     */
+    public ClassDefinition getArray(IType type, boolean primitiveType, int dimensions) {
+        final ConcurrentMap<Key, ClassDefinition> defs = getDefinitions(type.getJavaProject());
+        final Key key = new Key(type, primitiveType ? ElementCategory.PRIMITIVE_ARRAY : ElementCategory.OBJECT_ARRAY, dimensions);
+        ClassDefinition def = defs.get(key);
+        if (def == null)
+            def = register(defs, key, ClassDefinition.createArray(type, primitiveType, dimensions));
+        return def;
+    }
+
+    /**
+     * Registers the given definition unless an other thread was faster.
+     * 
+     * @param defs The definitions of the project
+     * @param key The key
+     * @param def The new definition
+     * @return The registered definition
+     */
+    private static ClassDefinition register(ConcurrentMap<Key, ClassDefinition> defs, Key key, ClassDefinition def) {
+        final ClassDefinition prev = defs.putIfAbsent(key, def);
+        return prev != null ? prev : def;
+    }
+
+    /**
+     * Looks up the given type.
+     * 
+     * @param project The project
+     * @param name The fully qualified class name
+     * @return The type
+     * @throws TechnicalModelException If the type does not exist or if the lookup failed
+     */
+    private IType findType(IJavaProject project, String name) throws TechnicalModelException {
+        try {
+            final IType type = types.findType(project, name);
+            if (type == null)
+                throw new TechnicalModelException("No type defined for " + name + "!", null);
+            return type;
+        } catch (JavaModelException e) {
+            throw new TechnicalModelException("Error while looking up " + name, e);
+        }
+    }
+
+    /**
+     * Returns the definitions of the given project.<br>
+     * Drops all definitions if the type cache was dropped since they were registered.
+     * 
+     * @param project The project
+     * @return The definitions
+     */
+    private ConcurrentMap<Key, ClassDefinition> getDefinitions(IJavaProject project) {
+        final int gen = types.getGeneration();
+        if (gen != generation) {
+            definitions.clear();
+            generation = gen;
+        }
+        final ConcurrentMap<Key, ClassDefinition> defs = definitions.get(project);
+        if (defs != null)
+            return defs;
+        final ConcurrentMap<Key, ClassDefinition> created = new ConcurrentHashMap<Key, ClassDefinition>();
+        final ConcurrentMap<Key, ClassDefinition> prev = definitions.putIfAbsent(project, created);
+        return prev != null ? prev : created;
+    }
+
+    /**
+     * Key of a definition.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Key {
+        /** The type. */
+        private final IType type;
+
+        /** The type category. */
+        private final ElementCategory category;
+
+        /** The number of dimensions. */
+        private final int dimensions;
+
+        /**
+         * Default constructor.
+         * 
+         * @param type The type
+         * @param category The type category
+         * @param dimensions The number of dimensions
+         */
+        Key(IType type, ElementCategory category, int dimensions) {
+            this.type = type;
+            this.category = category;
+            this.dimensions = dimensions;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return (type.hashCode() * 31 + category.hashCode()) * 31 + dimensions;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return dimensions == other.dimensions && category == other.category && type.equals(other.type);
+        }
+    }
+}
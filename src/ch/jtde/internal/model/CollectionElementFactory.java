@@ -11,6 +11,7 @@ package ch.jtde.internal.model;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -74,7 +75,7 @@ public class CollectionElementFactory {
         @Override
         public final IDataElement<IAttribute> create(IType type, IProgressMonitor pm) throws TechnicalModelException {
             try {
-                return create(ClassDefinition.create(type, ElementCategory.COLLECTION), type, type.getJavaProject(), pm);
+                return create(Activator.getDefinitionRegistry().get(type, ElementCategory.COLLECTION), type, type.getJavaProject(), pm);
             } catch (JavaModelException e) {
                 throw new TechnicalModelException("Error while creating " + type.getFullyQualifiedName(), e);
             }
@@ -125,7 +126,7 @@ public class CollectionElementFactory {
         @SuppressWarnings("rawtypes")
         protected IDataElement create(ClassDefinition colType, IType type, IJavaProject proj, IProgressMonitor pm) throws JavaModelException {
             // TODO parse generics type
-            final ClassDefinition obj = ClassDefinition.create(Object.class.getName(), ElementCategory.STRUCTURE, proj, pm);
+            final ClassDefinition obj = Activator.getDefinitionRegistry().get(proj, Object.class.getName(), ElementCategory.STRUCTURE, pm);
             return new IndexCollectionElement(colType, obj);
         }
     }
@@ -152,7 +153,7 @@ public class CollectionElementFactory {
         @SuppressWarnings("rawtypes")
         protected IDataElement create(ClassDefinition colType, IType type, IJavaProject proj, IProgressMonitor pm) throws JavaModelException {
             // TODO parse generics type
-            final ClassDefinition obj = ClassDefinition.create(Object.class.getName(), ElementCategory.STRUCTURE, proj, pm);
+            final ClassDefinition obj = Activator.getDefinitionRegistry().get(proj, Object.class.getName(), ElementCategory.STRUCTURE, pm);
             return new MapElement(colType, obj, obj, obj);
         }
     }
@@ -179,7 +180,7 @@ public class CollectionElementFactory {
         @SuppressWarnings("rawtypes")
         protected IDataElement create(ClassDefinition colType, IType type, IJavaProject proj, IProgressMonitor pm) {
             // TODO parse generics type
-            return new CollectionElement(colType, ClassDefinition.create(Object.class.getName(), ElementCategory.STRUCTURE, proj, pm));
+            return new CollectionElement(colType, Activator.getDefinitionRegistry().get(proj, Object.class.getName(), ElementCategory.STRUCTURE, pm));
         }
     }
 }
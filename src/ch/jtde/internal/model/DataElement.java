@@ -23,6 +23,9 @@ public class DataElement implements IDataElement<ElementAttribute> {
     /** The attributes of this element. */
     private final List<ElementAttribute> attributes = new ArrayList<ElementAttribute>();
 
+    /** The not yet read content of the attributes or null. */
+    private volatile IDeferredContent deferredContent;
+
     /**
      * Default constructor.
      * 
@@ -43,6 +46,7 @@ public class DataElement implements IDataElement<ElementAttribute> {
      * {@inheritDoc}
      */
     public ElementAttribute getChild(int index) {
+        materialize();
         return attributes.get(index);
     }
 
@@ -53,6 +57,48 @@ public class DataElement implements IDataElement<ElementAttribute> {
         return type;
     }
 
+    /**
+     * Returns the not yet read content of the attributes.
+     * 
+     * @return The content or null if the attributes are populated
+     */
+    public IDeferredContent getDeferredContent() {
+        return deferredContent;
+    }
+
+    /**
+     * Sets the content of the attributes which gets read on the first access to an attribute.<br>
+     * Use this only while initializing a element which is not yet visible to any listener.
+     * 
+     * @param content The content or null
+     */
+    public void setDeferredContent(IDeferredContent content) {
+        deferredContent = content;
+    }
+
+    /**
+     * Populates the attributes with the deferred content (without firing events - the values existed already logically).<br>
+     * The content resets itself (see {@link IDeferredContent#load(DataElement)}).
+     */
+    public void materialize() {
+        final IDeferredContent content = deferredContent;
+        if (content != null)
+            content.load(this);
+    }
+
+    /**
+     * Sets the state of the attributes without firing change events.<br>
+     * Use this only while initializing a element which is not yet visible to any listener.
+     * 
+     * @param state The state
+     * @param primitives False to skip the attributes of a primitive type
+     */
+    public void initAttributeStates(AttributeState state, boolean primitives) {
+        for (ElementAttribute attr : attributes)
+            if (primitives || !attr.getLowerBound().getCategory().isPrimitive())
+                attr.initState(state);
+    }
+
     /**
      * Creates and adds a attribute according to the specified parameters.
      * 
@@ -9,14 +9,18 @@
 package ch.jtde.internal.model;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.internal.utils.*;
 import ch.jtde.model.*;
 import ch.jtde.model.IExtendableDataElement.IExtendableDataElementHandler;
 
 /**
- * {@link IDataElementManager} implementation.
+ * {@link IDataElementManager} implementation.<br>
+ * The results of the supertype hierarchy lookups are memoized per type. They are dropped when a mapping gets registered or when the hierarchy of a type may
+ * have changed (see {@link TypeCache#getStructureGeneration()}).
  * 
  * @author M. Hautle
  */
@@ -40,6 +44,18 @@ public final class DataElementManager implements IDataElementManager {
     @SuppressWarnings("rawtypes")
     private final Map<String, IExtendableDataElementHandler> extendHandler = new HashMap<String, IExtendableDataElementHandler>();
 
+    /** Marker for memoized lookups without a match. */
+    private static final Object NONE = new Object();
+
+    /** The memoized results of the {@link #superTypeFactories} lookups. */
+    private final Map<IType, Object> resolvedFactories = new ConcurrentHashMap<IType, Object>();
+
+    /** The memoized results of the {@link #superTypeCategories} lookups. */
+    private final Map<IType, Object> resolvedCategories = new ConcurrentHashMap<IType, Object>();
+
+    /** The {@link TypeCache#getStructureGeneration()} for which the memoized lookups were computed. */
+    private volatile int generation;
+
     /**
      * Initializes the manager by fetching all registered {@link IDataElementDescriptor}s.
      */
@@ -101,12 +117,13 @@ public final class DataElementManager implements IDataElementManager {
      * @throws JavaModelException If something went wrong
      */
     private IndexCollectionElement createArrayField(IType type, boolean primitive, int dimensions, IProgressMonitor pm) throws JavaModelException {
+        final ClassDefinitionRegistry definitions = Activator.getDefinitionRegistry();
         final ClassDefinition valueType;
         if (dimensions == 1)
-            valueType = ClassDefinition.create(type, primitive ? ElementCategory.PRIMITIVE : getTypeCategory(type, pm));
+            valueType = definitions.get(type, primitive ? ElementCategory.PRIMITIVE : getTypeCategory(type, pm));
         else
-            valueType = ClassDefinition.createArray(type, primitive, dimensions - 1);
-        final ClassDefinition arrayType = ClassDefinition.createArray(type, primitive, dimensions);
+            valueType = definitions.getArray(type, primitive, dimensions - 1);
+        final ClassDefinition arrayType = definitions.getArray(type, primitive, dimensions);
         return new IndexCollectionElement(arrayType, valueType);
     }
 
@@ -125,30 +142,58 @@ public final class DataElementManager implements IDataElementManager {
         if (Flags.isAbstract(type.getFlags()))
             throw new IllegalArgumentException(
                     "Abstract elements were not supported - currently the JVM does not support intanciation of abstract classes or interfaces.");
-        return lookup(type, superTypeFactories, pm);
+        return lookup(type, superTypeFactories, resolvedFactories, pm);
     }
 
     /**
      * Looks up the first matching element for the given type or one of it's supertypes.<br>
+     * The result is memoized in the passed cache, so the supertype hierarchy gets only computed once per type.
      * 
      * @param <T> The result type
      * @param type The type to check
      * @param map The map to use for the resolving (the key must be a fully qualified class name)
+     * @param cache The memoized results of the lookups in <code>map</code>
      * @param pm A progressmonitor
      * @return The matching element or null if none was found
      * @throws JavaModelException If something went wrong during type analysis
      */
-    private <T> T lookup(IType type, Map<String, T> map, IProgressMonitor pm) throws JavaModelException {
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(IType type, Map<String, T> map, Map<IType, Object> cache, IProgressMonitor pm) throws JavaModelException {
         final T res = map.get(type.getFullyQualifiedName());
         if (res != null)
             return res;
-        return lookup(type.newSupertypeHierarchy(pm), type, map);
+        checkGeneration();
+        final Object cached = cache.get(type);
+        if (cached != null)
+            return cached != NONE ? (T) cached : null;
+        final T found = lookup(type.newSupertypeHierarchy(pm), type, map);
+        cache.put(type, found != null ? found : NONE);
+        return found;
+    }
+
+    /**
+     * Drops the memoized lookups if the type hierarchies may have changed since they were computed.
+     */
+    private void checkGeneration() {
+        final int gen = Activator.getTypeCache().getStructureGeneration();
+        if (gen != generation) {
+            clearLookups();
+            generation = gen;
+        }
+    }
+
+    /**
+     * Drops the memoized lookups.
+     */
+    private void clearLookups() {
+        resolvedFactories.clear();
+        resolvedCategories.clear();
     }
 
     /**
      * Looks up the first matching element for the supertypes of the given type.<br>
      * This method travels recursively throug the supertype hierarchy of the given type until it get's a match in the passed map.<br>
-     * Don't call this method directly - call {@link #lookup(IType, Map, IProgressMonitor)} instead.
+     * Don't call this method directly - call {@link #lookup(IType, Map, Map, IProgressMonitor)} instead.
      * 
      * @param <T> The result type
      * @param h The super type hierarchy to search through
@@ -181,16 +226,72 @@ public final class DataElementManager implements IDataElementManager {
         ElementCategory cat = categories.get(type.getFullyQualifiedName());
         if (cat != null)
             return cat;
-        cat = lookup(type, superTypeCategories, pm);
+        cat = lookupCategory(type, pm);
         return cat != null ? cat : ElementCategory.STRUCTURE;
     }
 
+    /**
+     * Looks up the category of the given type in {@link #superTypeCategories}.<br>
+     * Like {@link #lookup(IType, Map, Map, IProgressMonitor)} but the results get also stored in the {@link TypeMetadataCache}.
+     * 
+     * @param type The type
+     * @param pm A progressmonitor
+     * @return The category or null if none was found
+     * @throws JavaModelException If something went wrong during type analysis
+     */
+    private ElementCategory lookupCategory(IType type, IProgressMonitor pm) throws JavaModelException {
+        final ElementCategory res = superTypeCategories.get(type.getFullyQualifiedName());
+        if (res != null)
+            return res;
+        checkGeneration();
+        Object cached = resolvedCategories.get(type);
+        if (cached == null) {
+            final TypeMetadataCache metadata = Activator.getMetadataCache();
+            final String[] stored = metadata.get(TypeMetadataCache.CATEGORY, type);
+            if (stored != null) {
+                cached = stored.length > 0 ? ElementCategory.valueOf(stored[0]) : NONE;
+            } else {
+                final ITypeHierarchy h = type.newSupertypeHierarchy(pm);
+                final ElementCategory found = lookup(h, type, superTypeCategories);
+                metadata.put(TypeMetadataCache.CATEGORY, type, Arrays.asList(h.getAllSupertypes(type)), found != null ? new String[] { found.name() }
+                        : new String[0]);
+                cached = found != null ? found : NONE;
+            }
+            resolvedCategories.put(type, cached);
+        }
+        return cached != NONE ? (ElementCategory) cached : null;
+    }
+
+    /**
+     * Returns a stamp of the registered categories.<br>
+     * The stamp is stable between sessions, so it may be used to check if persisted categories are still valid.
+     * 
+     * @return The stamp
+     */
+    public int getConfigurationStamp() {
+        return 31 * getStamp(categories) + getStamp(superTypeCategories);
+    }
+
+    /**
+     * Returns a stamp of the given category mapping.
+     * 
+     * @param map The mapping
+     * @return The stamp
+     */
+    private static int getStamp(Map<String, ElementCategory> map) {
+        int res = 0;
+        for (Map.Entry<String, ElementCategory> e : map.entrySet())
+            res += e.getKey().hashCode() ^ e.getValue().name().hashCode();
+        return res;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void registerSupertypeFactory(String name, IDataElementFactory factory) {
         superTypeFactories.put(name, factory);
+        clearLookups();
     }
 
     /**
@@ -215,6 +316,7 @@ public final class DataElementManager implements IDataElementManager {
     @Override
     public void registerSuperTypeCategory(String name, ElementCategory category) {
         categories.put(name, category);
+        clearLookups();
     }
 
     /**
@@ -10,6 +10,7 @@ package ch.jtde.internal.model;
 
 import java.util.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -64,11 +65,27 @@ public class EnumElement extends AbstractValueElement<String> {
      * @throws JavaModelException
      */
     public List<String> getConstants() throws JavaModelException {
-        final IType type = getType().getType();
+        return getConstants(getType().getType());
+    }
+
+    /**
+     * Returns the constant names of the given enum.<br>
+     * The names are taken from the {@link TypeMetadataCache} if possible.
+     * 
+     * @param type The enum type
+     * @return The constant names
+     * @throws JavaModelException
+     */
+    static List<String> getConstants(IType type) throws JavaModelException {
+        final TypeMetadataCache cache = Activator.getMetadataCache();
+        final String[] cached = cache.get(TypeMetadataCache.ENUM, type);
+        if (cached != null)
+            return new ArrayList<String>(Arrays.asList(cached));
         final List<String> res = new ArrayList<String>();
         for (IField f : type.getFields())
             if (Flags.isEnum(f.getFlags()))
                 res.add(f.getElementName());
+        cache.put(TypeMetadataCache.ENUM, type, Collections.<IType> emptyList(), res.toArray(new String[res.size()]));
         return res;
     }
 }
@@ -10,6 +10,7 @@ package ch.jtde.internal.model;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -23,6 +24,6 @@ public class EnumElementFactory implements IDataElementFactory {
      */
     @Override
     public IDataElement<IAttribute> create(IType type, IProgressMonitor pm) throws TechnicalModelException {
-        return new EnumElement(ClassDefinition.create(type, ElementCategory.VALUE));
+        return new EnumElement(Activator.getDefinitionRegistry().get(type, ElementCategory.VALUE));
     }
 }
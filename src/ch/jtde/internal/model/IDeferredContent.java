@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.model;
+
+/**
+ * Content of a {@link DataElement} which gets only read when it's attributes are accessed.
+ * 
+ * @author M. Hautle
+ */
+public interface IDeferredContent {
+    /**
+     * Populates the attributes of the given element.<br>
+     * The content must be removed from the element (see {@link DataElement#setDeferredContent(IDeferredContent)}) before the attributes get accessed - the
+     * element may be materialized concurrently.
+     * 
+     * @param element The element owning this content
+     */
+    void load(DataElement element);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.model;
+
+import java.util.*;
+import ch.jtde.model.*;
+
+/**
+ * Content of a {@link IndexCollectionElement} which gets only materialized when it's entries are accessed.<br>
+ * The entries get created page by page (see {@link IndexCollectionElement#getChild(int)}), so a content should be able to read any range of entries
+ * without reading the entries in front of it.
+ * 
+ * @author M. Hautle
+ */
+public interface ILazyContent {
+    /**
+     * Returns the number of entries.
+     * 
+     * @return The number of entries
+     */
+    int size();
+
+    /**
+     * Creates the values of the given range of entries.
+     * 
+     * @param from The index of the first entry (inclusive)
+     * @param to The index of the last entry (exclusive)
+     * @return The values (null entries represent null values)
+     */
+    List<IDataElement<IAttribute>> load(int from, int to);
+}
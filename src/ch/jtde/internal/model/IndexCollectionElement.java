@@ -17,6 +17,9 @@ import ch.jtde.model.*;
  * @author M. Hautle
  */
 public class IndexCollectionElement extends AbstractExtendableDataElement<IndexCollectionAttribute> {
+    /** The number of entries of {@link #lazyContent} created at once (the number of entries per chunk of a side-car file). */
+    private static final int PAGE_SIZE = 1024;
+
     /** The type of this element. */
     private final ClassDefinition type;
 
@@ -26,6 +29,15 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
     /** The attributes of this element. */
     private final List<IndexCollectionAttribute> attributes = new ArrayList<IndexCollectionAttribute>();
 
+    /** The not yet completely materialized content or null. */
+    private volatile ILazyContent lazyContent;
+
+    /** The materialized pages of {@link #lazyContent} (null entries for the pages not yet created). */
+    private IndexCollectionAttribute[][] pages;
+
+    /** The number of non null entries in {@link #pages}. */
+    private int loadedPages;
+
     /**
      * Default constructor.
      * 
@@ -41,6 +53,9 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * {@inheritDoc}
      */
     public int getChildCount() {
+        final ILazyContent content = lazyContent;
+        if (content != null)
+            return content.size();
         return attributes.size();
     }
 
@@ -48,9 +63,89 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * {@inheritDoc}
      */
     public IndexCollectionAttribute getChild(int index) {
+        if (lazyContent != null)
+            return getLazyChild(index);
         return attributes.get(index);
     }
 
+    /**
+     * Returns the given entry of the lazy content.<br>
+     * Only the page holding the entry gets materialized.
+     * 
+     * @param index The index
+     * @return The entry
+     */
+    private synchronized IndexCollectionAttribute getLazyChild(int index) {
+        // the content may have been materialized completely meanwhile
+        if (lazyContent == null)
+            return attributes.get(index);
+        if (index < 0 || index >= lazyContent.size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lazyContent.size());
+        return getPage(index / PAGE_SIZE)[index % PAGE_SIZE];
+    }
+
+    /**
+     * Returns the given page of the lazy content, the page gets materialized if necessary.<br>
+     * Errors of the content are propagated, the page stays unmaterialized in this case.
+     * 
+     * @param page The page index
+     * @return The entries of the page
+     */
+    private IndexCollectionAttribute[] getPage(int page) {
+        IndexCollectionAttribute[] res = pages[page];
+        if (res != null)
+            return res;
+        final int from = page * PAGE_SIZE;
+        final List<IDataElement<IAttribute>> values = lazyContent.load(from, Math.min(from + PAGE_SIZE, lazyContent.size()));
+        res = new IndexCollectionAttribute[values.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = new IndexCollectionAttribute(this, Integer.valueOf(from + i));
+            res[i].setValue(values.get(i));
+        }
+        pages[page] = res;
+        loadedPages++;
+        return res;
+    }
+
+    /**
+     * Sets the content of this element which gets materialized page by page on the access to it's entries.<br>
+     * The element must be empty.
+     * 
+     * @param content The content
+     */
+    public synchronized void setLazyContent(ILazyContent content) {
+        if (!attributes.isEmpty())
+            throw new IllegalStateException("The element has already a content!");
+        pages = new IndexCollectionAttribute[(content.size() + PAGE_SIZE - 1) / PAGE_SIZE][];
+        loadedPages = 0;
+        lazyContent = content;
+    }
+
+    /**
+     * Returns the lazy content if none of it's entries were materialized yet.<br>
+     * Materialized entries may have been changed, so the content must not be used as a whole anymore in this case.
+     * 
+     * @return The content or null if entries were already created
+     */
+    public synchronized ILazyContent getLazyContent() {
+        return loadedPages == 0 ? lazyContent : null;
+    }
+
+    /**
+     * Creates all entries of the lazy content (without firing events - the entries existed already logically).<br>
+     * Errors of the content are propagated, the content is kept in this case.
+     */
+    private synchronized void materialize() {
+        if (lazyContent == null)
+            return;
+        for (int i = 0; i < pages.length; i++)
+            getPage(i);
+        for (IndexCollectionAttribute[] page : pages)
+            attributes.addAll(Arrays.asList(page));
+        pages = null;
+        lazyContent = null;
+    }
+
     /**
      * Creates a new entry.<br>
      * Calls {@link #fireAttributesAdded(IndexCollectionAttribute...)} after the entry was added.
@@ -58,6 +153,7 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * @return The new entry
      */
     public IndexCollectionAttribute add() {
+        materialize();
         final IndexCollectionAttribute attr = new IndexCollectionAttribute(this, Integer.valueOf(attributes.size()));
         attributes.add(attr);
         fireAttributesAdded(attr);
@@ -70,6 +166,7 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * @param attr The attribute to remove
      */
     public void remove(IndexCollectionAttribute attr) {
+        materialize();
         final int index = attr.getKey().intValue();
         for (int i = attributes.size() - 1; i > index; i--)
             attributes.get(i).setKey(Integer.valueOf(i - 1));
@@ -99,6 +196,7 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * @param attribute The attribute to move up.
      */
     public void moveUp(IndexCollectionAttribute attribute) {
+        materialize();
         final int index = attribute.getKey().intValue();
         if (index == 0)
             return;
@@ -114,6 +212,7 @@ public class IndexCollectionElement extends AbstractExtendableDataElement<IndexC
      * @param attribute The attribute to move down.
      */
     public void moveDown(IndexCollectionAttribute attribute) {
+        materialize();
         final int index = attribute.getKey().intValue();
         if (index + 1 >= attributes.size())
             return;
@@ -11,6 +11,7 @@ package ch.jtde.internal.model;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -35,7 +36,18 @@ public class PrimitiveValue<V> extends AbstractValueElement<V> {
      */
     @SuppressWarnings("unchecked")
     public PrimitiveValue(Type type, IJavaProject proj, IProgressMonitor pm) {
-        super(type.getDefinition(proj, pm));
+        this(type, type.getDefinition(proj, pm));
+    }
+
+    /**
+     * Constructor for a already resolved type definition.
+     * 
+     * @param type The primitive type
+     * @param definition The definition of the type (see {@link Type#getDefinition(IJavaProject, IProgressMonitor)})
+     */
+    @SuppressWarnings("unchecked")
+    public PrimitiveValue(Type type, ClassDefinition definition) {
+        super(definition);
         this.wrapperType = type;
         this.value = (V) type.getDefaultValue();
     }
@@ -174,21 +186,21 @@ public class PrimitiveValue<V> extends AbstractValueElement<V> {
          */
         public IType getType(IJavaProject proj, IProgressMonitor pm) {
             try {
-                return proj.findType(name, pm);
+                return Activator.getTypeCache().findType(proj, name);
             } catch (JavaModelException e) {
                 throw new TechnicalModelException("Error while resolving " + name, e);
             }
         }
 
         /**
-         * Returns the {@link ClassDefinition} for this type.
+         * Returns the canonical {@link ClassDefinition} for this type (see {@link ClassDefinitionRegistry}).
          * 
          * @param proj The base project
          * @param pm A progressmonitor or null
          * @return The classdefinition
          */
         public ClassDefinition getDefinition(IJavaProject proj, IProgressMonitor pm) {
-            return ClassDefinition.create(name, ElementCategory.PRIMITIVE, proj, pm);
+            return Activator.getDefinitionRegistry().get(proj, name, ElementCategory.PRIMITIVE, pm);
         }
 
         /**
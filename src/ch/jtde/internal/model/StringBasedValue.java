@@ -10,6 +10,7 @@ package ch.jtde.internal.model;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -39,7 +40,7 @@ public class StringBasedValue extends StringValue {
          */
         @Override
         public IDataElement<IAttribute> create(IType type, IProgressMonitor pm) throws TechnicalModelException {
-            return new StringBasedValue(ClassDefinition.create(type, ElementCategory.VALUE));
+            return new StringBasedValue(Activator.getDefinitionRegistry().get(type, ElementCategory.VALUE));
         }
     }
 }
@@ -9,6 +9,8 @@
 package ch.jtde.internal.model;
 
 import static ch.jtde.internal.model.PrimitiveValue.Type.*;
+import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
 import org.eclipse.jdt.core.util.*;
@@ -17,35 +19,77 @@ import ch.jtde.internal.model.PrimitiveValue.Type;
 import ch.jtde.model.*;
 
 /**
- * Factory for structure {@link IDataElement}s - i.e. ordinary objects.
+ * Factory for structure {@link IDataElement}s - i.e. ordinary objects.<br>
+ * The first element of a type gets created by analyzing the type, all further ones are copies of it's {@link Template}. The templates are dropped when
+ * the structure of a type may have changed (see {@link TypeCache#getStructureGeneration()}).<br>
+ * The analyzed fields are additionally stored in the {@link TypeMetadataCache}, so they are only resolved again if one of the analyzed types changed.
  * 
  * @author M. Hautle
  */
 public class StructureElementFactory implements IDataElementFactory {
+    /** The templates by type. */
+    private final Map<IType, Template> templates = new ConcurrentHashMap<IType, Template>();
+
+    /** The {@link TypeCache#getStructureGeneration()} for which {@link #templates} were computed. */
+    private volatile int generation;
+
     /**
      * {@inheritDoc}
      */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     public IDataElement<IAttribute> create(IType type, IProgressMonitor pm) throws TechnicalModelException {
         try {
-            return create0(type, pm);
+            return (IDataElement) getTemplate(type, pm).create();
         } catch (JavaModelException e) {
             throw new TechnicalModelException("Error while creating " + type.getFullyQualifiedName(), e);
         }
     }
 
+    /**
+     * Returns the template for the given type.
+     * 
+     * @param type The type
+     * @param pm A progressmonitor or null
+     * @return The template
+     * @throws JavaModelException If something went wrong
+     */
+    private Template getTemplate(IType type, IProgressMonitor pm) throws JavaModelException {
+        final int gen = Activator.getTypeCache().getStructureGeneration();
+        if (gen != generation) {
+            templates.clear();
+            generation = gen;
+        }
+        Template t = templates.get(type);
+        if (t == null) {
+            final TypeMetadataCache metadata = Activator.getMetadataCache();
+            final String[] stored = metadata.get(TypeMetadataCache.STRUCTURE, type);
+            final DataElement restored = stored != null ? restore(type, stored, pm) : null;
+            if (restored != null) {
+                t = new Template(restored);
+            } else {
+                final List<IType> hierarchy = new ArrayList<IType>();
+                t = new Template(create0(type, hierarchy, pm));
+                metadata.put(TypeMetadataCache.STRUCTURE, type, hierarchy.subList(1, hierarchy.size()), t.toData());
+            }
+            templates.put(type, t);
+        }
+        return t;
+    }
+
     /**
      * Creates the given type.
      * 
      * @param type The type
+     * @param hierarchy List where the analyzed types (the type and it's superclasses) get added
      * @param pm A progressmonitor or null
      * @return The created type
      * @throws JavaModelException If something went wrong
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    private IDataElement<IAttribute> create0(IType type, IProgressMonitor pm) throws JavaModelException {
+    private DataElement create0(IType type, List<IType> hierarchy, IProgressMonitor pm) throws JavaModelException {
         final IJavaProject project = type.getJavaProject();
-        final DataElement el = new DataElement(ClassDefinition.create(type, ElementCategory.STRUCTURE));
+        final DataElement el = new DataElement(Activator.getDefinitionRegistry().get(type, ElementCategory.STRUCTURE));
         while (type != null) {
+            hierarchy.add(type);
             for (IField f : type.getFields()) {
                 // skip static fields
                 if ((f.getFlags() & IModifierConstants.ACC_STATIC) == 0)
@@ -54,7 +98,51 @@ public class StructureElementFactory implements IDataElementFactory {
             final String parent = type.getSuperclassTypeSignature();
             type = parent != null ? resolveType(parent, type, pm) : null;
         }
-        return (IDataElement) el;
+        return el;
+    }
+
+    /**
+     * Creates the given type out of the data stored by {@link Template#toData()}.<br>
+     * Only the field types get resolved again (by their fully qualified names) - the constraints are resolved as usual.
+     * 
+     * @param type The type
+     * @param data The stored data
+     * @param pm A progressmonitor or null
+     * @return The created type or null if a referenced type does not exist anymore
+     * @throws JavaModelException If something went wrong
+     */
+    private DataElement restore(IType type, String[] data, IProgressMonitor pm) throws JavaModelException {
+        final IJavaProject project = type.getJavaProject();
+        final TypeCache types = Activator.getTypeCache();
+        final ClassDefinitionRegistry definitions = Activator.getDefinitionRegistry();
+        final DataElement el = new DataElement(definitions.get(type, ElementCategory.STRUCTURE));
+        for (int i = 0; i < data.length; i += Template.FIELD_ENTRIES) {
+            final String name = data[i];
+            final IType declaring = types.findType(project, data[i + 1]);
+            if (declaring == null)
+                return null;
+            final String typeName = data[i + 2];
+            final ElementCategory category = ElementCategory.valueOf(data[i + 3]);
+            final int dimensions = Integer.parseInt(data[i + 4]);
+            final ElementAttribute attr;
+            if (dimensions == 0 && category == ElementCategory.PRIMITIVE) {
+                final IValueElement<Object> val = new PrimitiveValue<Object>(Type.getType(typeName), project, pm);
+                attr = el.defineAttribute(name, val.getType(), declaring.getFullyQualifiedName());
+                attr.setValue(val);
+            } else {
+                final IType fType = types.findType(declaring.getJavaProject(), typeName);
+                if (fType == null)
+                    return null;
+                final ClassDefinition def;
+                if (dimensions > 0)
+                    def = definitions.getArray(fType, category == ElementCategory.PRIMITIVE_ARRAY, dimensions);
+                else
+                    def = definitions.get(fType, Activator.getElementManager().getTypeCategory(fType, pm));
+                attr = el.defineAttribute(name, def, declaring.getFullyQualifiedName());
+            }
+            attr.setConstraints(Activator.getConstraintManager().resolveConstraints(declaring.getField(name)));
+        }
+        return el;
     }
 
     /**
@@ -81,7 +169,7 @@ public class StructureElementFactory implements IDataElementFactory {
                 break;
             case Signature.CLASS_TYPE_SIGNATURE:
                 final IType fType = resolveType(sig, parentType, pm);
-                attr = element.defineAttribute(name, ClassDefinition.create(fType, Activator.getElementManager().getTypeCategory(fType, pm)),
+                attr = element.defineAttribute(name, Activator.getDefinitionRegistry().get(fType, Activator.getElementManager().getTypeCategory(fType, pm)),
                         parentType.getFullyQualifiedName());
                 break;
             case Signature.ARRAY_TYPE_SIGNATURE:
@@ -114,9 +202,9 @@ public class StructureElementFactory implements IDataElementFactory {
         switch (sigType) {
             case Signature.BASE_TYPE_SIGNATURE:
                 final Type type = resolvePrimitiveType(elementSig);
-                return ClassDefinition.createArray(type.getType(parentType.getJavaProject(), pm), true, dim);
+                return Activator.getDefinitionRegistry().getArray(type.getType(parentType.getJavaProject(), pm), true, dim);
             case Signature.CLASS_TYPE_SIGNATURE:
-                return ClassDefinition.createArray(resolveType(elementSig, parentType, pm), false, dim);
+                return Activator.getDefinitionRegistry().getArray(resolveType(elementSig, parentType, pm), false, dim);
             default:
                 throw new IllegalArgumentException("Unsupported element type: " + elementSig);
         }
@@ -180,4 +268,91 @@ public class StructureElementFactory implements IDataElementFactory {
         }
         throw new IllegalArgumentException("Unknown primitive type: " + sig);
     }
+
+    /**
+     * The analyzed structure of a type.<br>
+     * The type definitions are shared by the created elements, each element gets its own copy of the constraints, the primitive values get created with
+     * their default value.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Template {
+        /** Number of entries per field in {@link #toData()}. */
+        static final int FIELD_ENTRIES = 5;
+
+        /** The type. */
+        private final ClassDefinition type;
+
+        /** The attribute names. */
+        private final String[] names;
+
+        /** The attribute types. */
+        private final ClassDefinition[] types;
+
+        /** The declaring classes. */
+        private final String[] declaringClasses;
+
+        /** The primitive types (null entries for non primitive attributes). */
+        private final Type[] primitives;
+
+        /** The constraints. */
+        private final List<List<IAttributeConstraint>> constraints;
+
+        /**
+         * Default constructor.
+         * 
+         * @param prototype A element created by analyzing the type
+         */
+        Template(DataElement prototype) {
+            type = prototype.getType();
+            final int cnt = prototype.getChildCount();
+            names = new String[cnt];
+            types = new ClassDefinition[cnt];
+            declaringClasses = new String[cnt];
+            primitives = new Type[cnt];
+            constraints = new ArrayList<List<IAttributeConstraint>>(cnt);
+            for (int i = 0; i < cnt; i++) {
+                final ElementAttribute attr = prototype.getChild(i);
+                names[i] = attr.getName();
+                types[i] = attr.getLowerBound();
+                declaringClasses[i] = attr.getDeclaringClass();
+                final IDataElement<IAttribute> value = attr.getValue();
+                primitives[i] = value instanceof PrimitiveValue ? ((PrimitiveValue<?>) value).getWrapperType() : null;
+                constraints.add(new ArrayList<IAttributeConstraint>(attr.getConstraints()));
+            }
+        }
+
+        /**
+         * Returns the fields of this template as flat list (name, declaring class, type name, category and dimensions of each field).
+         * 
+         * @return The data to store in the {@link TypeMetadataCache}
+         */
+        String[] toData() {
+            final String[] res = new String[names.length * FIELD_ENTRIES];
+            for (int i = 0, j = 0; i < names.length; i++) {
+                res[j++] = names[i];
+                res[j++] = declaringClasses[i];
+                res[j++] = types[i].getName();
+                res[j++] = types[i].getCategory().name();
+                res[j++] = String.valueOf(types[i].getDimensions());
+            }
+            return res;
+        }
+
+        /**
+         * Creates a new element of the template's type.
+         * 
+         * @return The element
+         */
+        DataElement create() {
+            final DataElement el = new DataElement(type);
+            for (int i = 0; i < names.length; i++) {
+                final ElementAttribute attr = el.defineAttribute(names[i], types[i], declaringClasses[i]);
+                if (primitives[i] != null)
+                    attr.setValue(new PrimitiveValue<Object>(primitives[i], types[i]));
+                attr.setConstraints(new ArrayList<IAttributeConstraint>(constraints.get(i)));
+            }
+            return el;
+        }
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.model;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.jdt.core.*;
+import org.eclipse.jdt.core.search.*;
+
+/**
+ * Per project cache of the {@link IType}s resolved by their fully qualified name (including the names which could not be resolved).<br>
+ * The cache gets dropped on each JDT delta which may add or remove a type or which changes a classpath. As projects see the types of the projects they
+ * depend on, the caches of all projects are dropped in this case. Changes within a type (the common case while editing) keep the cache.<br>
+ * Caches of type structures (fields, super types) may use {@link #getStructureGeneration()} which changes additionally on each delta touching a field or
+ * the declaration of a type.
+ * 
+ * @author M. Hautle
+ */
+public final class TypeCache implements IElementChangedListener {
+    /** Marker for names which could not be resolved. */
+    private static final Object NOT_FOUND = new Object();
+
+    /** The resolved types by project and fully qualified name. */
+    private final Map<IJavaProject, Map<String, Object>> types = new ConcurrentHashMap<IJavaProject, Map<String, Object>>();
+
+    /** Counter incremented each time the cache gets dropped. */
+    private volatile int generation;
+
+    /** Counter incremented each time the structure of a type may have changed. */
+    private volatile int structureGeneration;
+
+    /**
+     * Registers the cache as JDT listener.
+     */
+    public void initialize() {
+        JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+    }
+
+    /**
+     * Deregisters the cache and drops it's content.
+     */
+    public void dispose() {
+        JavaCore.removeElementChangedListener(this);
+        clear();
+    }
+
+    /**
+     * Returns the type with the given name as seen from the given project.
+     * 
+     * @param project The project
+     * @param name The fully qualified name
+     * @return The type or null if it does not exist
+     * @throws JavaModelException If something went wrong
+     */
+    public IType findType(IJavaProject project, String name) throws JavaModelException {
+        final Map<String, Object> cache = getCache(project);
+        Object res = cache.get(name);
+        if (res == null) {
+            final IType type = project.findType(name);
+            res = type != null ? type : NOT_FOUND;
+            cache.put(name, res);
+        }
+        return res != NOT_FOUND ? (IType) res : null;
+    }
+
+    /**
+     * Resolves the given types in one search engine pass and adds them to the cache.<br>
+     * Names which were not found or which were found more than once (where the classpath order decides) are left to {@link #findType(IJavaProject, String)}.
+     * 
+     * @param project The project
+     * @param names The fully qualified names
+     * @param pm A progressmonitor or null
+     * @throws JavaModelException If something went wrong
+     */
+    public void resolve(IJavaProject project, Collection<String> names, IProgressMonitor pm) throws JavaModelException {
+        final Map<String, Object> cache = getCache(project);
+        // the search engine reports member types with '.' instead of '$'
+        final Map<String, String> requested = new HashMap<String, String>();
+        for (String name : names)
+            if (!cache.containsKey(name) && name.lastIndexOf('.') > 0)
+                requested.put(name.replace('$', '.'), name);
+        if (requested.isEmpty())
+            return;
+        final char[][] qualifications = new char[requested.size()][];
+        final char[][] simpleNames = new char[requested.size()][];
+        int i = 0;
+        for (String name : requested.keySet()) {
+            final int index = name.lastIndexOf('.');
+            qualifications[i] = name.substring(0, index).toCharArray();
+            simpleNames[i++] = name.substring(index + 1).toCharArray();
+        }
+        final Map<String, IType> found = new HashMap<String, IType>();
+        final Set<String> ambiguous = new HashSet<String>();
+        final TypeNameMatchRequestor requestor = new TypeNameMatchRequestor() {
+            @Override
+            public void acceptTypeNameMatch(TypeNameMatch match) {
+                // the qualifications and names are combined crosswise - so check the match
+                final String name = requested.get(match.getFullyQualifiedName());
+                if (name != null && found.put(name, match.getType()) != null)
+                    ambiguous.add(name);
+            }
+        };
+        final IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+        new SearchEngine().searchAllTypeNames(qualifications, simpleNames, scope, requestor, IJavaSearchConstants.WAIT_UNTIL_READY_TO_SEARCH, pm);
+        for (Map.Entry<String, IType> e : found.entrySet())
+            if (!ambiguous.contains(e.getKey()))
+                cache.put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Returns the cache of the given project.
+     * 
+     * @param project The project
+     * @return The cache
+     */
+    private Map<String, Object> getCache(IJavaProject project) {
+        Map<String, Object> cache = types.get(project);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<String, Object>();
+            types.put(project, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Drops the cached types of all projects.
+     */
+    public void clear() {
+        generation++;
+        structureGeneration++;
+        types.clear();
+    }
+
+    /**
+     * Returns the generation of the cache.<br>
+     * The value changes each time the cache gets dropped, so other caches depending on the types may use it for their own invalidation.
+     * 
+     * @return The generation
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the structure generation.<br>
+     * The value changes each time the fields, the super types or the modifiers of a type may have changed (and each time the cache gets dropped).
+     * 
+     * @return The structure generation
+     */
+    public int getStructureGeneration() {
+        return structureGeneration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        final IJavaElementDelta delta = event.getDelta();
+        if (affectsTypes(delta))
+            clear();
+        else if (affectsStructure(delta))
+            structureGeneration++;
+    }
+
+    /**
+     * Checks wherever the given delta may change the fields or the declaration of a type.
+     * 
+     * @param delta The delta
+     * @return True if the structure of a type may have changed
+     */
+    private static boolean affectsStructure(IJavaElementDelta delta) {
+        final int elementType = delta.getElement().getElementType();
+        // method bodies and the like are of no interest
+        if (elementType > IJavaElement.FIELD)
+            return false;
+        if (elementType == IJavaElement.FIELD || delta.getKind() != IJavaElementDelta.CHANGED)
+            return true;
+        if (elementType == IJavaElement.TYPE && (delta.getFlags() & (IJavaElementDelta.F_SUPER_TYPES | IJavaElementDelta.F_MODIFIERS)) != 0)
+            return true;
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+            if (affectsStructure(child))
+                return true;
+        return false;
+    }
+
+    /**
+     * Checks wherever the given delta may add or remove a type or change the visibility of types.
+     * 
+     * @param delta The delta
+     * @return True if the resolution of type names may have changed
+     */
+    private static boolean affectsTypes(IJavaElementDelta delta) {
+        final int elementType = delta.getElement().getElementType();
+        final int kind = delta.getKind();
+        if (kind == IJavaElementDelta.ADDED || kind == IJavaElementDelta.REMOVED)
+            return elementType <= IJavaElement.TYPE;
+        final int flags = delta.getFlags();
+        if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED)) != 0)
+            return true;
+        // a changed source without fine grained information may have added or removed (nested) types
+        if ((elementType == IJavaElement.COMPILATION_UNIT || elementType == IJavaElement.CLASS_FILE) && (flags & IJavaElementDelta.F_CONTENT) != 0
+                && (flags & IJavaElementDelta.F_FINE_GRAINED) == 0)
+            return true;
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+            if (affectsTypes(child))
+                return true;
+        return false;
+    }
+}
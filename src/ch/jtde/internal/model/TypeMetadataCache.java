@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.model;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+import org.eclipse.jdt.core.*;
+import ch.jtde.*;
+
+/**
+ * Persistent cache of type metadata computed from the Java model (structure templates, type categories and enum constants).<br>
+ * The entries are stored in the state location of the plugin, keyed by their kind, the project and the type name. Each entry holds the classpath stamp of
+ * the project and the time stamps of the types it was computed from - it's only returned if all of them are unchanged. Types with unsaved changes are never
+ * stored.<br>
+ * The file gets loaded in the background, stale entries found while loading are recomputed by the same job. Changes are written back by a delayed job.
+ * 
+ * @author M. Hautle
+ */
+public final class TypeMetadataCache {
+    /** Kind of the entries holding the category of a type. */
+    public static final char CATEGORY = 'c';
+
+    /** Kind of the entries holding the structure template of a type. */
+    public static final char STRUCTURE = 's';
+
+    /** Kind of the entries holding the constants of an enum. */
+    public static final char ENUM = 'e';
+
+    /** Name of the cache file in the state location. */
+    private static final String FILE_NAME = "typeMetadata.cache";
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Delay in milliseconds between a change and the save. */
+    private static final long SAVE_DELAY = 10000;
+
+    /** Stamp of types which can't be cached. */
+    public static final long NO_STAMP = Long.MIN_VALUE;
+
+    /** The type cache used for the lookups. */
+    private final TypeCache types;
+
+    /** The entries by their key. */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /** Job loading the file. */
+    private final Job loadJob = new Job("Loading type metadata") {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            load();
+            refreshStale(monitor);
+            return Status.OK_STATUS;
+        }
+    };
+
+    /** Job writing the file. */
+    private final Job saveJob = new Job("Saving type metadata") {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            save();
+            return Status.OK_STATUS;
+        }
+    };
+
+    /** The cache file. */
+    private File file;
+
+    /** Stamp of the configuration the entries were computed with. */
+    private int configuration;
+
+    /** Flag indicating that the entries differ from the file. */
+    private volatile boolean dirty;
+
+    /**
+     * Default constructor.
+     * 
+     * @param types The type cache to use for the lookups
+     */
+    public TypeMetadataCache(TypeCache types) {
+        this.types = types;
+        loadJob.setSystem(true);
+        loadJob.setPriority(Job.LONG);
+        saveJob.setSystem(true);
+    }
+
+    /**
+     * Starts loading the cache file in the background.
+     * 
+     * @param location The directory holding the cache file
+     * @param configuration Stamp of the configuration (registered categories, plugin version) - a file written with another stamp is ignored
+     */
+    public void initialize(File location, int configuration) {
+        this.file = new File(location, FILE_NAME);
+        this.configuration = configuration;
+        loadJob.schedule();
+    }
+
+    /**
+     * Stops the jobs and writes the pending changes.
+     */
+    public void dispose() {
+        loadJob.cancel();
+        saveJob.cancel();
+        if (dirty)
+            save();
+        entries.clear();
+    }
+
+    /**
+     * Returns the data stored for the given type.
+     * 
+     * @param kind The kind of the data ({@link #CATEGORY}, {@link #STRUCTURE} or {@link #ENUM})
+     * @param type The type
+     * @return The data (must not be modified) or null if there is no valid entry
+     */
+    public String[] get(char kind, IType type) {
+        final String key = getKey(kind, type);
+        final Entry e = entries.get(key);
+        if (e == null)
+            return null;
+        if (isValid(e, type.getJavaProject()))
+            return e.data;
+        if (entries.remove(key, e))
+            dirty = true;
+        return null;
+    }
+
+    /**
+     * Stores the data computed for the given type.<br>
+     * Nothing gets stored if the type or one of it's dependencies has unsaved changes.
+     * 
+     * @param kind The kind of the data ({@link #CATEGORY}, {@link #STRUCTURE} or {@link #ENUM})
+     * @param type The type
+     * @param dependencies The other types the data was computed from
+     * @param data The data
+     */
+    public void put(char kind, IType type, Collection<IType> dependencies, String[] data) {
+        try {
+            final String[] names = new String[dependencies.size() + 1];
+            final long[] stamps = new long[names.length];
+            names[0] = type.getFullyQualifiedName();
+            stamps[0] = getStamp(type);
+            int i = 1;
+            for (IType t : dependencies) {
+                names[i] = t.getFullyQualifiedName();
+                stamps[i++] = getStamp(t);
+            }
+            for (long s : stamps)
+                if (s == NO_STAMP)
+                    return;
+            entries.put(getKey(kind, type), new Entry(getClasspathStamp(type.getJavaProject()), names, stamps, data));
+            dirty = true;
+            saveJob.schedule(SAVE_DELAY);
+        } catch (JavaModelException e) {
+            // not cacheable
+        }
+    }
+
+    /**
+     * Checks if the given entry is still valid.
+     * 
+     * @param entry The entry
+     * @param project The project of the entry
+     * @return True if the classpath and all dependencies are unchanged
+     */
+    private boolean isValid(Entry entry, IJavaProject project) {
+        try {
+            if (entry.classpath != getClasspathStamp(project))
+                return false;
+            for (int i = 0; i < entry.dependencies.length; i++) {
+                final IType t = types.findType(project, entry.dependencies[i]);
+                if (t == null || getStamp(t) != entry.stamps[i])
+                    return false;
+            }
+            return true;
+        } catch (JavaModelException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the stale entries and recomputes the ones whose type still exists.
+     * 
+     * @param pm A progressmonitor
+     */
+    private void refreshStale(IProgressMonitor pm) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (pm.isCanceled())
+                return;
+            final String key = e.getKey();
+            final IType type = findType(key);
+            if (type != null && isValid(e.getValue(), type.getJavaProject()))
+                continue;
+            if (entries.remove(key, e.getValue()))
+                dirty = true;
+            if (type != null)
+                refresh(key.charAt(0), type, pm);
+        }
+        if (dirty)
+            saveJob.schedule(SAVE_DELAY);
+    }
+
+    /**
+     * Recomputes the data of the given kind by calling it's producer (which stores the result).
+     * 
+     * @param kind The kind of the data
+     * @param type The type
+     * @param pm A progressmonitor
+     */
+    private void refresh(char kind, IType type, IProgressMonitor pm) {
+        try {
+            switch (kind) {
+                case CATEGORY:
+                    Activator.getElementManager().getTypeCategory(type, pm);
+                    break;
+                case STRUCTURE:
+                    Activator.getElementManager().create(type, pm);
+                    break;
+                case ENUM:
+                    EnumElement.getConstants(type);
+                    break;
+            }
+        } catch (JavaModelException e) {
+            // the entry will be recomputed on demand
+        } catch (RuntimeException e) {
+            // the entry will be recomputed on demand
+        }
+    }
+
+    /**
+     * Returns the type of the given key.
+     * 
+     * @param key The key
+     * @return The type or null if it does not exist anymore
+     */
+    private IType findType(String key) {
+        final int index = key.indexOf('/');
+        final IJavaProject project = JavaCore.create(ResourcesPlugin.getWorkspace().getRoot().getProject(key.substring(1, index)));
+        if (project == null || !project.exists())
+            return null;
+        try {
+            return types.findType(project, key.substring(index + 1));
+        } catch (JavaModelException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the cache file.
+     */
+    private void load() {
+        if (!file.isFile())
+            return;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION || in.readInt() != configuration)
+                return;
+            for (int i = 0, cnt = in.readInt(); i < cnt; i++) {
+                final String key = in.readUTF();
+                final int classpath = in.readInt();
+                final String[] names = new String[in.readInt()];
+                final long[] stamps = new long[names.length];
+                for (int j = 0; j < names.length; j++) {
+                    names[j] = in.readUTF();
+                    stamps[j] = in.readLong();
+                }
+                final String[] data = new String[in.readInt()];
+                for (int j = 0; j < data.length; j++)
+                    data[j] = in.readUTF();
+                // entries computed in the meantime are newer
+                entries.putIfAbsent(key, new Entry(classpath, names, stamps, data));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes the cache file.
+     */
+    private synchronized void save() {
+        dirty = false;
+        final File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            final List<Map.Entry<String, Entry>> content = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            out.writeInt(configuration);
+            out.writeInt(content.size());
+            for (Map.Entry<String, Entry> e : content) {
+                final Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeInt(entry.classpath);
+                out.writeInt(entry.dependencies.length);
+                for (int i = 0; i < entry.dependencies.length; i++) {
+                    out.writeUTF(entry.dependencies[i]);
+                    out.writeLong(entry.stamps[i]);
+                }
+                out.writeInt(entry.data.length);
+                for (String s : entry.data)
+                    out.writeUTF(s);
+            }
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete())
+                throw new IOException("Unable to replace " + file);
+            if (!tmp.renameTo(file))
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Returns the key of the given entry.
+     * 
+     * @param kind The kind of the entry
+     * @param type The type
+     * @return The key
+     */
+    private static String getKey(char kind, IType type) {
+        return kind + type.getJavaProject().getElementName() + '/' + type.getFullyQualifiedName();
+    }
+
+    /**
+     * Returns the time stamp of the file defining the given type.
+     * 
+     * @param type The type
+     * @return The stamp or {@link #NO_STAMP} if the type has unsaved changes
+     * @throws JavaModelException If something went wrong
+     */
+    public static long getStamp(IType type) throws JavaModelException {
+        final ICompilationUnit cu = type.getCompilationUnit();
+        if (cu != null && cu.hasUnsavedChanges())
+            return NO_STAMP;
+        final IResource res = type.getResource();
+        if (res != null)
+            return res.getLocalTimeStamp();
+        // types of external archives
+        final IJavaElement root = type.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+        return root != null ? root.getPath().toFile().lastModified() : NO_STAMP;
+    }
+
+    /**
+     * Returns the stamp of the classpath of the given project.
+     * 
+     * @param project The project
+     * @return The stamp
+     * @throws JavaModelException If something went wrong
+     */
+    public static int getClasspathStamp(IJavaProject project) throws JavaModelException {
+        return Arrays.hashCode(project.getRawClasspath());
+    }
+
+    /**
+     * Closes the given stream.
+     * 
+     * @param stream The stream or null
+     */
+    private static void close(Closeable stream) {
+        if (stream != null)
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+    }
+
+    /**
+     * A cache entry.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Entry {
+        /** The classpath stamp of the project. */
+        final int classpath;
+
+        /** The names of the types the data was computed from (the first one is the type itself). */
+        final String[] dependencies;
+
+        /** The time stamps of {@link #dependencies}. */
+        final long[] stamps;
+
+        /** The data. */
+        final String[] data;
+
+        /**
+         * Default constructor.
+         * 
+         * @param classpath The classpath stamp of the project
+         * @param dependencies The names of the types the data was computed from
+         * @param stamps The time stamps of the dependencies
+         * @param data The data
+         */
+        Entry(int classpath, String[] dependencies, long[] stamps, String[] data) {
+            this.classpath = classpath;
+            this.dependencies = dependencies;
+            this.stamps = stamps;
+            this.data = data;
+        }
+    }
+}
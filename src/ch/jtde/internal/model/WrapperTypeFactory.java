@@ -10,6 +10,7 @@ package ch.jtde.internal.model;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 
 /**
@@ -24,6 +25,6 @@ public class WrapperTypeFactory implements IDataElementFactory {
     @Override
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public IDataElement<IAttribute> create(IType type, IProgressMonitor pm) throws TechnicalModelException {
-        return new WrapperTypeValue(ClassDefinition.create(type, ElementCategory.VALUE));
+        return new WrapperTypeValue(Activator.getDefinitionRegistry().get(type, ElementCategory.VALUE));
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.preferences;
+
+import org.eclipse.jface.preference.*;
+import org.eclipse.ui.*;
+import ch.jtde.*;
+
+/**
+ * Workspace preference page for the reading/writing of data files.
+ * 
+ * @author M. Hautle
+ */
+public class IOPreferencePage extends FieldEditorPreferencePage implements IWorkbenchPreferencePage {
+    /** Labels and values of the primitive array encodings. */
+    private static final String[][] ARRAY_ENCODINGS = { { "One &node per entry", "ELEMENTS" }, { "Comma separated &text", "TEXT" },
+            { "&Base64 encoded block", "BASE64" }, { "&Text for small, Base64 for large arrays", "AUTO" } };
+
+    /**
+     * Default constructor.
+     */
+    public IOPreferencePage() {
+        super(GRID);
+        setPreferenceStore(Activator.getDefault().getPreferenceStore());
+        setDescription("Settings for reading and writing test data files.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void createFieldEditors() {
+        addField(new BooleanFieldEditor(IOPreferences.STREAMING_READER, "Use a &streaming (StAX) reader instead of a DOM", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.PRESCAN, "&Prescan files and resolve their types in one batch", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.COMPACT_WRITER, "Write &compact files (no indentation)", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.DIRECT_CODEC, "Use the &direct element codec instead of XStream's marshallers (experimental)",
+                getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.ID_REFERENCES, "Write shared elements as &id references (uses the direct codec)",
+                getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.OMIT_DEFAULTS, "&Omit primitive fields holding their default value", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.TYPE_DICTIONARY, "Write a dictionary of frequent t&ype names (uses the direct codec)",
+                getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.STRING_TABLE, "Write a table of &repeated strings (uses the direct codec)", getFieldEditorParent()));
+        addField(new BooleanFieldEditor(IOPreferences.COMPRESS, "Write &gzip compressed files", getFieldEditorParent()));
+        final IntegerFieldEditor blobs = new IntegerFieldEditor(IOPreferences.BLOB_THRESHOLD, "Store byte/char arrays from this &length in a side-car file (0 = never)",
+                getFieldEditorParent());
+        blobs.setValidRange(0, Integer.MAX_VALUE);
+        addField(blobs);
+        final IntegerFieldEditor chunks = new IntegerFieldEditor(IOPreferences.CHUNK_THRESHOLD,
+                "Store collections from this number of entries in &chunks in the side-car file (0 = never)", getFieldEditorParent());
+        chunks.setValidRange(0, Integer.MAX_VALUE);
+        addField(chunks);
+        final IntegerFieldEditor snapshots = new IntegerFieldEditor(IOPreferences.SNAPSHOT_CACHE_SIZE,
+                "Size of the &snapshot cache of read files in MB (0 = disabled)", getFieldEditorParent());
+        snapshots.setValidRange(0, Integer.MAX_VALUE);
+        addField(snapshots);
+        final IntegerFieldEditor lazy = new IntegerFieldEditor(IOPreferences.LAZY_DEPTH, "Read structures from this &depth on their first access (0 = never)",
+                getFieldEditorParent());
+        lazy.setValidRange(0, Integer.MAX_VALUE);
+        addField(lazy);
+        addField(new RadioGroupFieldEditor(IOPreferences.ARRAY_ENCODING, "Encoding of primitive arrays", 1, ARRAY_ENCODINGS, getFieldEditorParent(), true));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(IWorkbench workbench) {
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.preferences;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.preferences.*;
+import org.eclipse.jdt.core.*;
+import ch.jtde.*;
+
+/**
+ * Preference keys and accessors for the reading/writing of data files.<br>
+ * The values are looked up in the project scope, the workspace (instance) scope and finally in the default scope.
+ * 
+ * @author M. Hautle
+ */
+public final class IOPreferences {
+    /** Use a streaming StAX reader instead of building a DOM tree while reading. */
+    public static final String STREAMING_READER = "io.streamingReader";
+
+    /** Write files without indentation and line breaks. */
+    public static final String COMPACT_WRITER = "io.compactWriter";
+
+    /** Read and write files with the direct element codec instead of XStream's tree marshallers. */
+    public static final String DIRECT_CODEC = "io.directCodec";
+
+    /** Write numeric id references instead of relative xpath references (switches to the direct codec). */
+    public static final String ID_REFERENCES = "io.idReferences";
+
+    /** Omit primitive attributes holding their default value. */
+    public static final String OMIT_DEFAULTS = "io.omitDefaults";
+
+    /** The encoding of primitive arrays (the name of a <code>ch.jtde.internal.xstream.ArrayEncoding</code> constant). */
+    public static final String ARRAY_ENCODING = "io.arrayEncoding";
+
+    /** Write gzip compressed files. */
+    public static final String COMPRESS = "io.compress";
+
+    /** The minimal length of byte/char arrays stored in a side-car file (0 to store all arrays in the data file). */
+    public static final String BLOB_THRESHOLD = "io.blobThreshold";
+
+    /** Write a dictionary of the frequent type names in the file header (switches to the direct codec). */
+    public static final String TYPE_DICTIONARY = "io.typeDictionary";
+
+    /** Write a table of the repeated strings in the file header (switches to the direct codec). */
+    public static final String STRING_TABLE = "io.stringTable";
+
+    /** Scan a file for it's types and resolve them in one batch before unmarshalling it. */
+    public static final String PRESCAN = "io.prescan";
+
+    /** The minimal number of entries of collections stored in chunks in the side-car file (0 to write all entries into the data file). */
+    public static final String CHUNK_THRESHOLD = "io.chunkThreshold";
+
+    /** The maximal size of the snapshot cache in MB (0 to disable the cache). */
+    public static final String SNAPSHOT_CACHE_SIZE = "io.snapshotCacheSize";
+
+    /** The element depth from which the content of structures gets only read when it's accessed (0 to read everything). */
+    public static final String LAZY_DEPTH = "io.lazyDepth";
+
+    /**
+     * Hidden constructor.
+     */
+    private IOPreferences() {
+    }
+
+    /**
+     * Returns wherever files should be read with a streaming (StAX) reader.
+     * 
+     * @param project The project owning the file or null
+     * @return True if the streaming reader should be used
+     */
+    public static boolean isStreamingReader(IJavaProject project) {
+        return getBoolean(STREAMING_READER, project);
+    }
+
+    /**
+     * Returns wherever files should be written without indentation.
+     * 
+     * @param project The project owning the file or null
+     * @return True if the compact writer should be used
+     */
+    public static boolean isCompactWriter(IJavaProject project) {
+        return getBoolean(COMPACT_WRITER, project);
+    }
+
+    /**
+     * Returns wherever files should be read and written by the direct element codec.
+     * 
+     * @param project The project owning the file or null
+     * @return True if the direct codec should be used
+     */
+    public static boolean isDirectCodec(IJavaProject project) {
+        return getBoolean(DIRECT_CODEC, project);
+    }
+
+    /**
+     * Returns wherever the direct codec should write id references instead of xpath references.
+     * 
+     * @param project The project owning the file or null
+     * @return True if id references should be written
+     */
+    public static boolean isIdReferences(IJavaProject project) {
+        return getBoolean(ID_REFERENCES, project);
+    }
+
+    /**
+     * Returns wherever primitive attributes holding their default value should be omitted while writing.
+     * 
+     * @param project The project owning the file or null
+     * @return True if default valued primitives should be omitted
+     */
+    public static boolean isOmitDefaults(IJavaProject project) {
+        return getBoolean(OMIT_DEFAULTS, project);
+    }
+
+    /**
+     * Returns wherever files should be written gzip compressed.<br>
+     * Existing compressed files are always written compressed.
+     * 
+     * @param project The project owning the file or null
+     * @return True if files should be compressed
+     */
+    public static boolean isCompress(IJavaProject project) {
+        return getBoolean(COMPRESS, project);
+    }
+
+    /**
+     * Returns the encoding to use for primitive arrays.
+     * 
+     * @param project The project owning the file or null
+     * @return The name of the encoding or null
+     */
+    public static String getArrayEncoding(IJavaProject project) {
+        return getString(ARRAY_ENCODING, project);
+    }
+
+    /**
+     * Returns wherever the direct codec should replace the frequent type names by the tokens of a dictionary in the file header.
+     * 
+     * @param project The project owning the file or null
+     * @return True if a type dictionary should be written
+     */
+    public static boolean isTypeDictionary(IJavaProject project) {
+        return getBoolean(TYPE_DICTIONARY, project);
+    }
+
+    /**
+     * Returns wherever the direct codec should replace repeated strings by the tokens of a table in the file header.
+     * 
+     * @param project The project owning the file or null
+     * @return True if a string table should be written
+     */
+    public static boolean isStringTable(IJavaProject project) {
+        return getBoolean(STRING_TABLE, project);
+    }
+
+    /**
+     * Returns wherever the types of a file should be resolved in one batch before it gets unmarshalled.
+     * 
+     * @param project The project owning the file or null
+     * @return True if files should be prescanned
+     */
+    public static boolean isPrescan(IJavaProject project) {
+        return getBoolean(PRESCAN, project);
+    }
+
+    /**
+     * Returns the minimal length of byte/char arrays to store in a side-car file.
+     * 
+     * @param project The project owning the file or null
+     * @return The threshold or 0 if all arrays should be stored in the data file
+     */
+    public static int getBlobThreshold(IJavaProject project) {
+        return getInt(BLOB_THRESHOLD, project);
+    }
+
+    /**
+     * Returns the minimal number of entries of collections stored in chunks in the side-car file.
+     * 
+     * @param project The project owning the file or null
+     * @return The threshold or 0 if all entries should be stored in the data file
+     */
+    public static int getChunkThreshold(IJavaProject project) {
+        return getInt(CHUNK_THRESHOLD, project);
+    }
+
+    /**
+     * Returns the maximal size of the snapshot cache.
+     * 
+     * @param project The project owning the file or null
+     * @return The size in MB (0 if the cache is disabled)
+     */
+    public static int getSnapshotCacheSize(IJavaProject project) {
+        return getInt(SNAPSHOT_CACHE_SIZE, project);
+    }
+
+    /**
+     * Returns the element depth from which the content of structures gets only read when it's accessed.
+     * 
+     * @param project The project owning the file or null
+     * @return The depth (0 if the whole file gets read at once)
+     */
+    public static int getLazyDepth(IJavaProject project) {
+        return getInt(LAZY_DEPTH, project);
+    }
+
+    /**
+     * Returns the int value of the given preference.
+     * 
+     * @param key The preference key
+     * @param project The project owning the file or null
+     * @return The preference value
+     */
+    static int getInt(String key, IJavaProject project) {
+        return Platform.getPreferencesService().getInt(Activator.PLUGIN_ID, key, 0, getContexts(project));
+    }
+
+    /**
+     * Returns the string value of the given preference.
+     * 
+     * @param key The preference key
+     * @param project The project owning the file or null
+     * @return The preference value or null
+     */
+    static String getString(String key, IJavaProject project) {
+        return Platform.getPreferencesService().getString(Activator.PLUGIN_ID, key, null, getContexts(project));
+    }
+
+    /**
+     * Returns the boolean value of the given preference.
+     * 
+     * @param key The preference key
+     * @param project The project owning the file or null
+     * @return The preference value
+     */
+    static boolean getBoolean(String key, IJavaProject project) {
+        return Platform.getPreferencesService().getBoolean(Activator.PLUGIN_ID, key, false, getContexts(project));
+    }
+
+    /**
+     * Returns the scopes to search through.
+     * 
+     * @param project The project owning the file or null
+     * @return The scopes in lookup order
+     */
+    private static IScopeContext[] getContexts(IJavaProject project) {
+        if (project == null)
+            return new IScopeContext[] { new InstanceScope(), new DefaultScope() };
+        final IProject proj = project.getProject();
+        return new IScopeContext[] { new ProjectScope(proj), new InstanceScope(), new DefaultScope() };
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.preferences;
+
+import org.eclipse.core.runtime.preferences.*;
+import ch.jtde.*;
+
+/**
+ * Initializer for the default values of the plugin preferences.
+ * 
+ * @author M. Hautle
+ */
+public class PreferenceInitializer extends AbstractPreferenceInitializer {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initializeDefaultPreferences() {
+        final IEclipsePreferences node = new DefaultScope().getNode(Activator.PLUGIN_ID);
+        node.putBoolean(IOPreferences.STREAMING_READER, true);
+        node.putBoolean(IOPreferences.COMPACT_WRITER, false);
+        node.putBoolean(IOPreferences.DIRECT_CODEC, false);
+        node.putBoolean(IOPreferences.ID_REFERENCES, false);
+        node.putBoolean(IOPreferences.OMIT_DEFAULTS, false);
+        node.put(IOPreferences.ARRAY_ENCODING, "ELEMENTS");
+        node.putBoolean(IOPreferences.COMPRESS, false);
+        node.putInt(IOPreferences.BLOB_THRESHOLD, 0);
+        node.putInt(IOPreferences.CHUNK_THRESHOLD, 0);
+        node.putBoolean(IOPreferences.TYPE_DICTIONARY, false);
+        node.putBoolean(IOPreferences.STRING_TABLE, false);
+        node.putBoolean(IOPreferences.PRESCAN, false);
+        node.putInt(IOPreferences.SNAPSHOT_CACHE_SIZE, 0);
+        node.putInt(IOPreferences.LAZY_DEPTH, 0);
+    }
+}
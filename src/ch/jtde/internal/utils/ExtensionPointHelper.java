@@ -11,6 +11,7 @@ package ch.jtde.internal.utils;
 import static ch.jtde.internal.utils.EclipseUtils.*;
 import java.util.*;
 import org.eclipse.core.runtime.*;
+import ch.jtde.*;
 import ch.jtde.actions.*;
 import ch.jtde.editors.*;
 import ch.jtde.model.*;
@@ -37,6 +38,21 @@ public class ExtensionPointHelper {
     /** Extensionpoint ID for the xstream converter point. */
     private static final String CONVERTER = "ch.jtde.xstream.converter";
 
+    /** Simple id of the {@link #CONVERTER} point. */
+    private static final String CONVERTER_ID = "xstream.converter";
+
+    /** Revision of the {@link #CONVERTER} contributions - incremented on each change. */
+    private static volatile int converterRevision;
+
+    /** Listener tracking the changes of the {@link #CONVERTER} contributions. */
+    private static final IRegistryChangeListener CONVERTER_LISTENER = new IRegistryChangeListener() {
+        @Override
+        public void registryChanged(IRegistryChangeEvent event) {
+            if (event.getExtensionDeltas(Activator.PLUGIN_ID, CONVERTER_ID).length > 0)
+                converterRevision++;
+        }
+    };
+
     /**
      * Returns a fresh {@link ICellEditor} instance for the given {@link IValueElement} type.
      * 
@@ -106,6 +122,30 @@ public class ExtensionPointHelper {
         return getInstances(CONVERTER, "Error while fetching XStream converters");
     }
 
+    /**
+     * Returns the revision of the {@link IDataElementConverter} contributions.<br>
+     * The value changes each time a converter gets contributed or removed.
+     * 
+     * @return The revision
+     */
+    public static int getConverterRevision() {
+        return converterRevision;
+    }
+
+    /**
+     * Registers the listeners tracking the changes of the extension points.
+     */
+    public static void addRegistryListeners() {
+        Platform.getExtensionRegistry().addRegistryChangeListener(CONVERTER_LISTENER, Activator.PLUGIN_ID);
+    }
+
+    /**
+     * Removes the listeners registered by {@link #addRegistryListeners()}.
+     */
+    public static void removeRegistryListeners() {
+        Platform.getExtensionRegistry().removeRegistryChangeListener(CONVERTER_LISTENER);
+    }
+
     /**
      * Returns an list with all instances defined for the given extension point.<br>
      * Simply instanciates every <code>name</code> attribute of the points children.
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import com.thoughtworks.xstream.converters.*;
+
+/**
+ * The encodings for arrays of primitives.<br>
+ * The encoding to use while writing is passed as {@link #KEY} entry of the marshalling context.
+ * 
+ * @author M. Hautle
+ */
+public enum ArrayEncoding {
+    /** One node per array entry. */
+    ELEMENTS(null),
+    /** All entries as comma separated text. */
+    TEXT("text"),
+    /** All entries as little endian block encoded in Base64. */
+    BASE64("base64"),
+    /** {@link #TEXT} for small arrays, {@link #BASE64} for arrays with at least {@link #AUTO_THRESHOLD} entries. */
+    AUTO(null);
+
+    /** Key of the {@link DataHolder} entry holding the encoding to use. */
+    public static final String KEY = "arrayEncoding";
+
+    /** Minimal number of entries for which {@link #AUTO} uses {@link #BASE64}. */
+    private static final int AUTO_THRESHOLD = 256;
+
+    /** The value of the encoding attribute or null if this encoding is not written as such. */
+    private final String attributeValue;
+
+    /**
+     * Default constructor.
+     * 
+     * @param attributeValue The value of the encoding attribute
+     */
+    private ArrayEncoding(String attributeValue) {
+        this.attributeValue = attributeValue;
+    }
+
+    /**
+     * Returns the value of the encoding attribute.
+     * 
+     * @return The value or null for {@link #ELEMENTS}
+     */
+    public String getAttributeValue() {
+        return attributeValue;
+    }
+
+    /**
+     * Returns the concrete encoding to use for an array of the given length.
+     * 
+     * @param length The array length
+     * @return The encoding
+     */
+    public ArrayEncoding select(int length) {
+        if (this != AUTO)
+            return this;
+        return length < AUTO_THRESHOLD ? TEXT : BASE64;
+    }
+
+    /**
+     * Returns the encoding hold by the given context.
+     * 
+     * @param context The marshalling context
+     * @return The encoding ({@link #ELEMENTS} if none was set)
+     */
+    public static ArrayEncoding get(DataHolder context) {
+        final Object val = context.get(KEY);
+        return val != null ? (ArrayEncoding) val : ELEMENTS;
+    }
+
+    /**
+     * Returns the encoding for the given attribute value.
+     * 
+     * @param value The attribute value
+     * @return The encoding or null if the value is unknown
+     */
+    public static ArrayEncoding forAttribute(String value) {
+        for (ArrayEncoding e : values())
+            if (e.attributeValue != null && e.attributeValue.equals(value))
+                return e;
+        return null;
+    }
+}
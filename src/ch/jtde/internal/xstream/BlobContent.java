@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.eclipse.jdt.core.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.internal.model.PrimitiveValue.Type;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.converters.*;
+
+/**
+ * {@link ILazyContent} of a byte or char array stored in a side-car file.<br>
+ * Only the pages of entries which get accessed are read (see {@link IndexCollectionElement#getChild(int)}), an unchanged content gets copied channel to
+ * channel on save. Chars are stored as UTF-16 little endian.
+ * 
+ * @author M. Hautle
+ */
+class BlobContent implements ILazyContent {
+    /** The side-car file. */
+    private File file;
+
+    /** The offset of the content in {@link #file}. */
+    private long offset;
+
+    /** The length of the content in bytes. */
+    private final long length;
+
+    /** The value type ({@link Type#BYTE} or {@link Type#CHAR}). */
+    private final Type type;
+
+    /** The project. */
+    private final IJavaProject project;
+
+    /**
+     * Default constructor.
+     * 
+     * @param file The side-car file
+     * @param offset The offset of the content
+     * @param length The length of the content in bytes
+     * @param type The value type ({@link Type#BYTE} or {@link Type#CHAR})
+     * @param project The project
+     */
+    BlobContent(File file, long offset, long length, Type type, IJavaProject project) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.type = type;
+        this.project = project;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return (int) (length / getSize(type));
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * Only the bytes of the range are read.
+     */
+    @Override
+    public List<IDataElement<IAttribute>> load(int from, int to) {
+        final int size = getSize(type);
+        final byte[] data = new byte[(to - from) * size];
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            in.seek(offset + (long) from * size);
+            in.readFully(data);
+        } catch (IOException e) {
+            throw new ConversionException("Unable to read " + data.length + " bytes at " + (offset + (long) from * size) + " from " + file, e);
+        } finally {
+            close(in);
+        }
+        final ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        final List<IDataElement<IAttribute>> res = new ArrayList<IDataElement<IAttribute>>(to - from);
+        final ClassDefinition def = type.getDefinition(project, null);
+        while (buf.hasRemaining()) {
+            final PrimitiveValue<Object> val = new PrimitiveValue<Object>(type, def);
+            val.setValue(type == Type.CHAR ? (Object) Character.valueOf(buf.getChar()) : (Object) Byte.valueOf(buf.get()));
+            res.add(val);
+        }
+        return res;
+    }
+
+    /**
+     * Copies the content into the given channel.
+     * 
+     * @param dest The destination
+     * @return The number of copied bytes
+     * @throws IOException If something went wrong
+     */
+    long transferTo(WritableByteChannel dest) throws IOException {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            final FileChannel src = in.getChannel();
+            for (long pos = 0; pos < length;)
+                pos += src.transferTo(offset + pos, length - pos, dest);
+            return length;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Points this content to a new location (after the side-car file got rewritten).
+     * 
+     * @param file The side-car file
+     * @param offset The offset of the content
+     */
+    void relocate(File file, long offset) {
+        this.file = file;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the content of the given array in the side-car representation.
+     * 
+     * @param source The array
+     * @param type The value type ({@link Type#BYTE} or {@link Type#CHAR})
+     * @return The content
+     */
+    static ByteBuffer encode(IndexCollectionElement source, Type type) {
+        final int cnt = source.getChildCount();
+        final ByteBuffer buf = ByteBuffer.allocate(cnt * getSize(type)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < cnt; i++) {
+            final Object val = ((PrimitiveValue<?>) source.getChild(i).getValue()).getValue();
+            if (type == Type.CHAR)
+                buf.putChar(((Character) val).charValue());
+            else
+                buf.put(((Byte) val).byteValue());
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Returns the number of bytes used by one entry.
+     * 
+     * @param type The value type ({@link Type#BYTE} or {@link Type#CHAR})
+     * @return The size in bytes
+     */
+    private static int getSize(Type type) {
+        return type == Type.CHAR ? 2 : 1;
+    }
+
+    /**
+     * Closes the given file.
+     * 
+     * @param in The file or null
+     */
+    private static void close(RandomAccessFile in) {
+        if (in != null)
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import ch.jtde.internal.model.*;
+import com.thoughtworks.xstream.converters.*;
+
+/**
+ * Resolves the {@link BlobWriter#BLOB_ATTRIBUTE} and {@link BlobWriter#CHUNKS_ATTRIBUTE} references of a data file to {@link BlobContent}s and
+ * {@link ChunkedContent}s of it's side-car file.<br>
+ * The content stays on disk until the entries of the array get accessed.
+ * 
+ * @author M. Hautle
+ */
+public class BlobReader {
+    /** Key of the reader in the {@link DataHolder}. */
+    public static final String KEY = "blobReader";
+
+    /** The side-car file. */
+    private final File file;
+
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /**
+     * Default constructor.
+     * 
+     * @param file The side-car file
+     * @param adapter The owning adapter
+     */
+    public BlobReader(File file, XStreamAdapter adapter) {
+        this.file = file;
+        this.adapter = adapter;
+    }
+
+    /**
+     * Sets the referenced content on the given array.
+     * 
+     * @param collection The array to populate
+     * @param reference The value of the {@link BlobWriter#BLOB_ATTRIBUTE}
+     */
+    public void read(IndexCollectionElement collection, String reference) {
+        final int sep = reference.indexOf(',');
+        final PrimitiveValue.Type type = BlobWriter.getType(collection.getValueType());
+        if (sep < 0 || type == null)
+            throw new ConversionException("Invalid blob reference " + reference + " on " + collection.getType().getName());
+        try {
+            final long offset = Long.parseLong(reference.substring(0, sep).trim());
+            final long length = Long.parseLong(reference.substring(sep + 1).trim());
+            if (offset + length > file.length())
+                throw new ConversionException("Blob " + reference + " exceeds the side-car file " + file);
+            collection.setLazyContent(new BlobContent(file, offset, length, type, collection.getValueType().getType().getJavaProject()));
+        } catch (NumberFormatException e) {
+            throw new ConversionException("Invalid blob reference " + reference, e);
+        }
+    }
+
+    /**
+     * Sets the referenced chunks on the given collection.
+     * 
+     * @param collection The collection to populate
+     * @param reference The value of the {@link BlobWriter#CHUNKS_ATTRIBUTE}
+     */
+    public void readChunks(IndexCollectionElement collection, String reference) {
+        collection.setLazyContent(getChunks(reference));
+    }
+
+    /**
+     * Returns the referenced chunks.
+     * 
+     * @param reference The value of the {@link BlobWriter#CHUNKS_ATTRIBUTE}
+     * @return The content
+     */
+    ChunkedContent getChunks(String reference) {
+        final int sep = reference.indexOf(',');
+        if (sep < 0)
+            throw new ConversionException("Invalid chunks reference " + reference);
+        try {
+            final long offset = Long.parseLong(reference.substring(0, sep).trim());
+            final int size = Integer.parseInt(reference.substring(sep + 1).trim());
+            if (offset >= file.length())
+                throw new ConversionException("Chunks " + reference + " exceed the side-car file " + file);
+            return new ChunkedContent(adapter, file, offset, size);
+        } catch (NumberFormatException e) {
+            throw new ConversionException("Invalid chunks reference " + reference, e);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.internal.model.PrimitiveValue.Type;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.converters.*;
+import com.thoughtworks.xstream.core.*;
+import com.thoughtworks.xstream.core.util.*;
+import com.thoughtworks.xstream.io.*;
+
+/**
+ * Writes the content of large byte and char arrays into a side-car file instead of the data file.<br>
+ * The array node gets only a {@link #BLOB_ATTRIBUTE} holding the offset and the length of the content ('offset,length'). Arrays still backed by a
+ * {@link BlobContent} are copied channel to channel without creating their entries.<br>
+ * Large collections whose entries don't share elements with the rest of the model are written in chunks with an index (see {@link ChunkedContent}). The
+ * collection node gets only a {@link #CHUNKS_ATTRIBUTE} holding the offset of the index and the number of entries ('offset,size').
+ * 
+ * @author M. Hautle
+ */
+public class BlobWriter {
+    /** Key of the writer in the {@link com.thoughtworks.xstream.converters.DataHolder}. */
+    public static final String KEY = "blobWriter";
+
+    /** Name of the attribute referencing the content in the side-car file. */
+    public static final String BLOB_ATTRIBUTE = "blob";
+
+    /** Name of the attribute referencing the chunk index in the side-car file. */
+    public static final String CHUNKS_ATTRIBUTE = "chunks";
+
+    /** The number of entries per chunk. */
+    public static final int CHUNK_SIZE = 1024;
+
+    /** The minimal number of entries of an array to be written into the side-car file (0 to disable). */
+    private final int threshold;
+
+    /** The minimal number of entries of a collection to be written in chunks (0 to disable). */
+    private final int chunkThreshold;
+
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /** The root element of the written model. */
+    @SuppressWarnings("rawtypes")
+    private final IDataElement root;
+
+    /** The file written by this writer. */
+    private final File file;
+
+    /** The output stream. */
+    private final FileOutputStream out;
+
+    /** The channel of {@link #out}. */
+    private final FileChannel channel;
+
+    /** The copied contents and their offset in {@link #file}. */
+    private final Map<BlobContent, Long> copied = new IdentityHashMap<BlobContent, Long>();
+
+    /** The copied chunked contents and the offset of their index in {@link #file}. */
+    private final Map<ChunkedContent, Long> copiedChunks = new IdentityHashMap<ChunkedContent, Long>();
+
+    /** The number of references to each element of the model (created on demand). */
+    @SuppressWarnings("rawtypes")
+    private Map<IDataElement, int[]> referenceCounts;
+
+    /** The current position in {@link #file}. */
+    private long position;
+
+    /**
+     * Default constructor.
+     * 
+     * @param file The file to write
+     * @param threshold The minimal number of entries of an array to be written into the side-car file (0 to disable)
+     * @param chunkThreshold The minimal number of entries of a collection to be written in chunks (0 to disable)
+     * @param adapter The owning adapter
+     * @param root The root element of the written model
+     * @throws IOException If the file could not be opened
+     */
+    @SuppressWarnings("rawtypes")
+    public BlobWriter(File file, int threshold, int chunkThreshold, XStreamAdapter adapter, IDataElement root) throws IOException {
+        this.file = file;
+        this.threshold = threshold;
+        this.chunkThreshold = chunkThreshold;
+        this.adapter = adapter;
+        this.root = root;
+        out = new FileOutputStream(file);
+        channel = out.getChannel();
+    }
+
+    /**
+     * Checks wherever the given array should be written into the side-car file.
+     * 
+     * @param source The array
+     * @return True for one dimensional byte or char arrays with at least {@link #threshold} entries
+     */
+    public boolean accepts(IndexCollectionElement source) {
+        return threshold > 0 && source.getType().getDimensions() == 1 && getType(source.getValueType()) != null && source.getChildCount() >= threshold;
+    }
+
+    /**
+     * Writes the content of the given array into the side-car file and the reference to it on the current node.
+     * 
+     * @param source The array (see {@link #accepts(IndexCollectionElement)})
+     * @param writer The writer
+     */
+    public void write(IndexCollectionElement source, HierarchicalStreamWriter writer) {
+        final long offset = position;
+        try {
+            final ILazyContent content = source.getLazyContent();
+            if (content instanceof BlobContent) {
+                position += ((BlobContent) content).transferTo(channel);
+                copied.put((BlobContent) content, Long.valueOf(offset));
+            } else {
+                final ByteBuffer buf = BlobContent.encode(source, getType(source.getValueType()));
+                while (buf.hasRemaining())
+                    position += channel.write(buf);
+            }
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+        writer.addAttribute(BLOB_ATTRIBUTE, offset + "," + (position - offset));
+    }
+
+    /**
+     * Checks wherever the given collection should be written in chunks.
+     * 
+     * @param source The collection
+     * @return True for collections with at least {@link #chunkThreshold} entries which don't share elements with the rest of the model
+     */
+    public boolean acceptsChunks(IndexCollectionElement source) {
+        if (chunkThreshold == 0)
+            return false;
+        final ILazyContent content = source.getLazyContent();
+        if (content != null)
+            return content instanceof ChunkedContent;
+        final int cnt = source.getChildCount();
+        if (cnt < chunkThreshold)
+            return false;
+        for (int i = 0; i < cnt; i += CHUNK_SIZE)
+            if (!isSelfContained(source, i, Math.min(i + CHUNK_SIZE, cnt)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes the given collection in chunks into the side-car file and the reference to the chunk index on the current node.
+     * 
+     * @param source The collection (see {@link #acceptsChunks(IndexCollectionElement)})
+     * @param writer The writer
+     * @param context The marshalling context
+     */
+    @SuppressWarnings("rawtypes")
+    public void writeChunks(IndexCollectionElement source, HierarchicalStreamWriter writer, DataHolder context) {
+        final int cnt = source.getChildCount();
+        final long offset;
+        try {
+            final ILazyContent content = source.getLazyContent();
+            final ChunkedContent.Index index;
+            if (content instanceof ChunkedContent) {
+                index = ((ChunkedContent) content).transferTo(channel, position);
+                for (int len : index.lengths)
+                    position += len;
+            } else {
+                // the chunks must not depend on the position of the side-car file, so they hold no side-car contents
+                final DataHolder options = new MapBackedDataHolder();
+                options.put(TypeNameCache.KEY, new TypeNameCache());
+                options.put(ArrayEncoding.KEY, ArrayEncoding.get(context));
+                if (ElementMarshallingHelper.isOmitDefaults(context))
+                    options.put(ElementMarshallingHelper.OMIT_DEFAULTS, Boolean.TRUE);
+                index = new ChunkedContent.Index((cnt + CHUNK_SIZE - 1) / CHUNK_SIZE);
+                final List<IDataElement> entries = new ArrayList<IDataElement>(CHUNK_SIZE);
+                for (int i = 0, chunk = 0; i < cnt; i += CHUNK_SIZE, chunk++) {
+                    ElementMarshallingHelper.checkCanceled(context);
+                    entries.clear();
+                    for (int j = i, end = Math.min(i + CHUNK_SIZE, cnt); j < end; j++)
+                        entries.add(source.getChild(j).getValue());
+                    final ByteBuffer buf = ByteBuffer.wrap(ChunkedContent.encode(adapter, entries, options));
+                    index.set(chunk, position, buf.remaining(), entries.size());
+                    while (buf.hasRemaining())
+                        position += channel.write(buf);
+                }
+            }
+            offset = position;
+            final ByteBuffer buf = index.encode();
+            while (buf.hasRemaining())
+                position += channel.write(buf);
+            if (content instanceof ChunkedContent)
+                copiedChunks.put((ChunkedContent) content, Long.valueOf(offset));
+        } catch (IOException e) {
+            throw new StreamException(e);
+        }
+        writer.addAttribute(CHUNKS_ATTRIBUTE, offset + "," + cnt);
+    }
+
+    /**
+     * Checks wherever the elements of the given range of entries are only referenced from within the range.
+     * 
+     * @param source The collection
+     * @param from The index of the first entry (inclusive)
+     * @param to The index of the last entry (exclusive)
+     * @return True if the range can be written as independent chunk
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean isSelfContained(IndexCollectionElement source, int from, int to) {
+        final FastStack todo = new FastStack(16);
+        for (int i = from; i < to; i++) {
+            final IDataElement value = source.getChild(i).getValue();
+            if (value != null)
+                todo.push(value);
+        }
+        final Map<IDataElement, int[]> local = countReferences(todo);
+        if (referenceCounts == null) {
+            final FastStack all = new FastStack(16);
+            all.push(root);
+            referenceCounts = countReferences(all);
+        }
+        for (Map.Entry<IDataElement, int[]> e : local.entrySet()) {
+            final int[] total = referenceCounts.get(e.getKey());
+            if (total == null || total[0] != e.getValue()[0])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts the references to the elements reachable from the given elements.<br>
+     * Contents not yet loaded from the side-car file are self-contained, so they are not walked.
+     * 
+     * @param todo The start elements
+     * @return The number of references to each element
+     */
+    @SuppressWarnings("rawtypes")
+    private static Map<IDataElement, int[]> countReferences(FastStack todo) {
+        final Map<IDataElement, int[]> res = new IdentityHashMap<IDataElement, int[]>();
+        while (todo.size() > 0) {
+            final IDataElement el = (IDataElement) todo.pop();
+            final int[] cnt = res.get(el);
+            if (cnt != null) {
+                cnt[0]++;
+                continue;
+            }
+            res.put(el, new int[] { 1 });
+            if (el instanceof IndexCollectionElement && ((IndexCollectionElement) el).getLazyContent() != null)
+                continue;
+            for (int i = 0, size = el.getChildCount(); i < size; i++) {
+                final IAttribute attr = el.getChild(i);
+                if (attr.getValue() != null)
+                    todo.push(attr.getValue());
+                if (attr instanceof MapAttribute && ((MapAttribute) attr).getKeyValue() != null)
+                    todo.push(((MapAttribute) attr).getKeyValue());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns wherever nothing was written into the side-car file.
+     * 
+     * @return True if the file is empty
+     */
+    public boolean isEmpty() {
+        return position == 0;
+    }
+
+    /**
+     * Closes the side-car file.
+     * 
+     * @throws IOException If something went wrong
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Points the copied contents to their new location.<br>
+     * Must be called after the written file was moved to it's final location.
+     * 
+     * @param dest The final location of the written file
+     */
+    public void commit(File dest) {
+        for (Map.Entry<BlobContent, Long> e : copied.entrySet())
+            e.getKey().relocate(dest, e.getValue().longValue());
+        copied.clear();
+        for (Map.Entry<ChunkedContent, Long> e : copiedChunks.entrySet())
+            e.getKey().relocate(dest, e.getValue().longValue());
+        copiedChunks.clear();
+    }
+
+    /**
+     * Returns the side-car value type of the given array value type.
+     * 
+     * @param valueType The value type
+     * @return {@link Type#BYTE}, {@link Type#CHAR} or null if the type is not supported
+     */
+    static Type getType(ClassDefinition valueType) {
+        if (!valueType.getCategory().isPrimitive())
+            return null;
+        final Type type = Type.getType(valueType.getName());
+        return type == Type.BYTE || type == Type.CHAR ? type : null;
+    }
+}
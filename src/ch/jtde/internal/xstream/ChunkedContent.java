@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.converters.*;
+import com.thoughtworks.xstream.io.binary.*;
+
+/**
+ * {@link ILazyContent} of a large collection stored in chunks in a side-car file.<br>
+ * Each chunk holds {@link BlobWriter#CHUNK_SIZE} entries as binary token image written by the direct codec with id references (see
+ * {@link ElementWriter#writeEntries(List, DataHolder)}). The chunks are followed by an index holding the offset, the length and the number of entries of
+ * each chunk - so any range of entries can be read without scanning the entries in front of it (see {@link #load(int, int)}). The editor reads the
+ * chunks page by page while it's entries get displayed (see {@link IndexCollectionElement#getChild(int)}), the index gets read once.
+ * 
+ * @author M. Hautle
+ */
+class ChunkedContent implements ILazyContent {
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /** The side-car file. */
+    private File file;
+
+    /** The offset of the index in {@link #file}. */
+    private long offset;
+
+    /** The number of entries. */
+    private final int size;
+
+    /** The index of the chunks or null if not yet read. */
+    private volatile Index index;
+
+    /**
+     * Default constructor.
+     * 
+     * @param adapter The owning adapter
+     * @param file The side-car file
+     * @param offset The offset of the index
+     * @param size The number of entries
+     */
+    ChunkedContent(XStreamAdapter adapter, File file, long offset, int size) {
+        this.adapter = adapter;
+        this.file = file;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * Only the chunks holding the range are read.
+     */
+    @Override
+    public List<IDataElement<IAttribute>> load(int from, int to) {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("Range " + from + "-" + to + " of " + size + " entries");
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            Index index = this.index;
+            if (index == null)
+                this.index = index = Index.read(in, offset);
+            final List<IDataElement<IAttribute>> res = new ArrayList<IDataElement<IAttribute>>(to - from);
+            // number of entries in front of the current chunk
+            int first = 0;
+            for (int i = 0; i < index.offsets.length && first < to; first += index.counts[i++]) {
+                if (first + index.counts[i] <= from)
+                    continue;
+                final byte[] chunk = new byte[index.lengths[i]];
+                in.seek(index.offsets[i]);
+                in.readFully(chunk);
+                final List<IDataElement<IAttribute>> entries = new ElementReader(adapter, new BinaryStreamReader(new ByteArrayInputStream(chunk)))
+                        .readEntries(adapter.createOptions(null));
+                if (entries.size() != index.counts[i])
+                    throw new ConversionException("Chunk " + i + " at " + index.offsets[i] + " of " + file + " is corrupt");
+                res.addAll(entries.subList(Math.max(from - first, 0), Math.min(to - first, entries.size())));
+            }
+            return res;
+        } catch (IOException e) {
+            throw new ConversionException("Unable to read the chunks at " + offset + " from " + file, e);
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Reads the entry with the given index.
+     * 
+     * @param index The index
+     * @return The entry or null
+     */
+    public IDataElement<IAttribute> get(int index) {
+        return load(index, index + 1).get(0);
+    }
+
+    /**
+     * Copies the chunks into the given channel.
+     * 
+     * @param dest The destination
+     * @param position The position of the destination
+     * @return The index of the copied chunks
+     * @throws IOException If something went wrong
+     */
+    Index transferTo(WritableByteChannel dest, long position) throws IOException {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            final Index index = Index.read(in, offset);
+            final FileChannel src = in.getChannel();
+            final Index res = new Index(index.offsets.length);
+            for (int i = 0; i < index.offsets.length; i++) {
+                for (long pos = 0; pos < index.lengths[i];)
+                    pos += src.transferTo(index.offsets[i] + pos, index.lengths[i] - pos, dest);
+                res.set(i, position, index.lengths[i], index.counts[i]);
+                position += index.lengths[i];
+            }
+            return res;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Points this content to a new location (after the side-car file got rewritten).
+     * 
+     * @param file The side-car file
+     * @param offset The offset of the index
+     */
+    void relocate(File file, long offset) {
+        this.file = file;
+        this.offset = offset;
+        index = null;
+    }
+
+    /**
+     * Returns the image of a chunk.
+     * 
+     * @param adapter The owning adapter
+     * @param entries The entries of the chunk
+     * @param options The options to write the entries with
+     * @return The binary token image
+     */
+    @SuppressWarnings("rawtypes")
+    static byte[] encode(XStreamAdapter adapter, List<IDataElement> entries, DataHolder options) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        final BinaryStreamWriter writer = new BinaryStreamWriter(out);
+        new ElementWriter(adapter, writer, true).writeEntries(entries, options);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Closes the given file.
+     * 
+     * @param in The file or null
+     */
+    private static void close(RandomAccessFile in) {
+        if (in != null)
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+    }
+
+    /**
+     * The index of the chunks of a collection.<br>
+     * Stored as number of chunks followed by offset, length and number of entries of each chunk.
+     * 
+     * @author M. Hautle
+     */
+    static final class Index {
+        /** The offsets of the chunks. */
+        final long[] offsets;
+
+        /** The lengths of the chunks in bytes. */
+        final int[] lengths;
+
+        /** The number of entries of the chunks. */
+        final int[] counts;
+
+        /**
+         * Default constructor.
+         * 
+         * @param chunks The number of chunks
+         */
+        Index(int chunks) {
+            offsets = new long[chunks];
+            lengths = new int[chunks];
+            counts = new int[chunks];
+        }
+
+        /**
+         * Sets the location of a chunk.
+         * 
+         * @param chunk The chunk index
+         * @param offset The offset of the chunk
+         * @param length The length of the chunk in bytes
+         * @param count The number of entries of the chunk
+         */
+        void set(int chunk, long offset, int length, int count) {
+            offsets[chunk] = offset;
+            lengths[chunk] = length;
+            counts[chunk] = count;
+        }
+
+        /**
+         * Returns the image of this index.
+         * 
+         * @return The image
+         */
+        ByteBuffer encode() {
+            final ByteBuffer buf = ByteBuffer.allocate(4 + offsets.length * 16);
+            buf.putInt(offsets.length);
+            for (int i = 0; i < offsets.length; i++)
+                buf.putLong(offsets[i]).putInt(lengths[i]).putInt(counts[i]);
+            buf.flip();
+            return buf;
+        }
+
+        /**
+         * Reads an index.
+         * 
+         * @param in The side-car file
+         * @param offset The offset of the index
+         * @return The index
+         * @throws IOException If something went wrong
+         */
+        static Index read(RandomAccessFile in, long offset) throws IOException {
+            in.seek(offset);
+            final int chunks = in.readInt();
+            if (chunks < 0 || offset + 4 + chunks * 16L > in.length())
+                throw new ConversionException("Invalid chunk index at " + offset);
+            final Index res = new Index(chunks);
+            for (int i = 0; i < chunks; i++)
+                res.set(i, in.readLong(), in.readInt(), in.readInt());
+            return res;
+        }
+    }
+}
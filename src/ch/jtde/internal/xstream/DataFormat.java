@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * The on disk formats of a data file.<br>
+ * Binary files start with {@link #BINARY_HEADER}, everything else is treated as XML. Both formats may be gzip compressed.
+ * 
+ * @author M. Hautle
+ */
+public enum DataFormat {
+    /** Plain XML. */
+    XML("data"),
+    /** XStream's binary token stream prefixed by {@link DataFormat#BINARY_HEADER}. */
+    BINARY("bdata");
+
+    /** The magic bytes at the begin of a binary file ('JTDB' followed by the format version). */
+    private static final int[] BINARY_HEADER = { 'J', 'T', 'D', 'B', 1 };
+
+    /** The magic bytes of a gzip stream. */
+    private static final int[] GZIP_HEADER = { 0x1f, 0x8b };
+
+    /** The default file extension of this format. */
+    private final String extension;
+
+    /**
+     * Default constructor.
+     * 
+     * @param extension The default file extension
+     */
+    private DataFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the default file extension of this format.
+     * 
+     * @return The extension (without the dot)
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Writes the header of this format into the given stream.
+     * 
+     * @param out The stream
+     * @throws IOException If something went wrong
+     */
+    void writeHeader(OutputStream out) throws IOException {
+        if (this == BINARY)
+            for (int b : BINARY_HEADER)
+                out.write(b);
+    }
+
+    /**
+     * Detects the format of the given stream and skips the format header.<br>
+     * The passed stream must support {@link InputStream#mark(int)}.
+     * 
+     * @param in The stream
+     * @return The format of the stream
+     * @throws IOException If something went wrong
+     */
+    static DataFormat detect(InputStream in) throws IOException {
+        in.mark(BINARY_HEADER.length);
+        if (hasBinaryHeader(in))
+            return BINARY;
+        in.reset();
+        return XML;
+    }
+
+    /**
+     * Checks wherever the given stream is gzip compressed.<br>
+     * The passed stream must support {@link InputStream#mark(int)}, it's position is not changed by this call.
+     * 
+     * @param in The stream
+     * @return True if the stream starts with the gzip magic bytes
+     * @throws IOException If something went wrong
+     */
+    static boolean isCompressed(InputStream in) throws IOException {
+        in.mark(GZIP_HEADER.length);
+        final boolean res = startsWith(in, GZIP_HEADER);
+        in.reset();
+        return res;
+    }
+
+    /**
+     * Returns the format to use for the given file.<br>
+     * The format of an existing file is kept (also if it's compressed), new files get the format matching their extension.
+     * 
+     * @param file The file
+     * @return The format
+     */
+    public static DataFormat forFile(File file) {
+        if (file.length() > 0) {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(file));
+                if (isCompressed(in))
+                    in = new GZIPInputStream(in);
+                return hasBinaryHeader(in) ? BINARY : XML;
+            } catch (IOException e) {
+                // fall back to the extension
+            } finally {
+                close(in);
+            }
+        }
+        return file.getName().endsWith("." + BINARY.extension) ? BINARY : XML;
+    }
+
+    /**
+     * Checks wherever the given file is gzip compressed.
+     * 
+     * @param file The file
+     * @return True if the file exists and is compressed
+     */
+    public static boolean isCompressed(File file) {
+        if (file.length() == 0)
+            return false;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return startsWith(in, GZIP_HEADER);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Closes the given stream.
+     * 
+     * @param in The stream or null
+     */
+    private static void close(InputStream in) {
+        if (in != null)
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+    }
+
+    /**
+     * Checks if the given stream starts with the passed bytes.
+     * 
+     * @param in The stream
+     * @param header The expected bytes
+     * @return True if the stream starts with the given bytes
+     * @throws IOException If something went wrong
+     */
+    private static boolean startsWith(InputStream in, int[] header) throws IOException {
+        for (int i = 0; i < header.length; i++)
+            if (in.read() != header[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Checks if the given stream starts with {@link #BINARY_HEADER}.
+     * 
+     * @param in The stream
+     * @return True if the header was found
+     * @throws IOException If something went wrong
+     */
+    private static boolean hasBinaryHeader(InputStream in) throws IOException {
+        return startsWith(in, BINARY_HEADER);
+    }
+}
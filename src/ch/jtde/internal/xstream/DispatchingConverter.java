@@ -9,20 +9,45 @@
 package ch.jtde.internal.xstream;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import ch.jtde.internal.utils.*;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
 import com.thoughtworks.xstream.converters.*;
 import com.thoughtworks.xstream.io.*;
 
 /**
- * {@link Converter} managing all converters for {@link IDataElement}s.
+ * {@link Converter} managing all converters for {@link IDataElement}s.<br>
+ * The resolved converter of each element type is cached. The cache gets dropped when a converter is registered or when the contributions to the
+ * converter extension point change (see {@link ExtensionPointHelper#getConverterRevision()}).
  * 
  * @author M. Hautle
  */
 public class DispatchingConverter implements Converter {
-    /** The list of converters. */
+    /** Value of {@link #revision} if the contributions were not loaded. */
+    private static final int NOT_LOADED = -1;
+
+    /** The list of converters (replaced on each change). */
+    @SuppressWarnings("rawtypes")
+    private volatile List<IDataElementConverter> converters = new ArrayList<IDataElementConverter>();
+
+    /** The converters contributed through the extension point. */
+    @SuppressWarnings("rawtypes")
+    private List<IDataElementConverter> contributed = new ArrayList<IDataElementConverter>();
+
+    /** The revision of the loaded contributions or {@link #NOT_LOADED}. */
+    private volatile int revision = NOT_LOADED;
+
+    /** The resolved converters by element type. */
     @SuppressWarnings("rawtypes")
-    private List<IDataElementConverter> converters = new ArrayList<IDataElementConverter>();
+    private final Map<Class, IDataElementConverter> cache = new ConcurrentHashMap<Class, IDataElementConverter>();
+
+    /** The number of lookups answered by {@link #cache}. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of lookups which had to ask the converters. */
+    private final AtomicLong misses = new AtomicLong();
 
     /**
      * {@inheritDoc}
@@ -61,8 +86,35 @@ public class DispatchingConverter implements Converter {
      * @param converter The converter to register
      */
     @SuppressWarnings("rawtypes")
-    public void registerConverter(IDataElementConverter converter) {
-        converters.add(converter);
+    public synchronized void registerConverter(IDataElementConverter converter) {
+        final List<IDataElementConverter> list = new ArrayList<IDataElementConverter>(converters);
+        list.add(converter);
+        converters = list;
+        cache.clear();
+    }
+
+    /**
+     * (Re)Loads the converters contributed through the extension point.<br>
+     * The contributions get reloaded automatically on the next lookup if the extension point changes.
+     */
+    @SuppressWarnings("rawtypes")
+    public synchronized void loadContributions() {
+        revision = ExtensionPointHelper.getConverterRevision();
+        final List<IDataElementConverter> others = new ArrayList<IDataElementConverter>(converters);
+        others.removeAll(contributed);
+        contributed = new ArrayList<IDataElementConverter>(ExtensionPointHelper.getXStreamConverters());
+        // the contributions come first - as on the initial load
+        final List<IDataElementConverter> list = new ArrayList<IDataElementConverter>(contributed);
+        list.addAll(others);
+        converters = list;
+        cache.clear();
+    }
+
+    /**
+     * Drops the cached converter resolutions.
+     */
+    public void invalidate() {
+        cache.clear();
     }
 
     /**
@@ -72,10 +124,68 @@ public class DispatchingConverter implements Converter {
      * @return The converter
      */
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private IDataElementConverter lookupConverterForType(Class<? extends IDataElement> type) {
-        for (IDataElementConverter c : converters)
-            if (c.canConvert(type))
+    IDataElementConverter lookupConverterForType(Class<? extends IDataElement> type) {
+        final int rev = revision;
+        if (rev != NOT_LOADED && rev != ExtensionPointHelper.getConverterRevision())
+            loadContributions();
+        IDataElementConverter conv = cache.get(type);
+        if (conv != null) {
+            hits.incrementAndGet();
+            return conv;
+        }
+        misses.incrementAndGet();
+        for (IDataElementConverter c : converters) {
+            if (c.canConvert(type)) {
+                cache.put(type, c);
                 return c;
+            }
+        }
         throw new ConversionException("No converter specified for " + type);
     }
+
+    /**
+     * Returns the number of lookups answered by the cache.
+     * 
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups which had to ask the converters.
+     * 
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the hit rate of the cache.
+     * 
+     * @return The hit rate (0 - 1)
+     */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    /**
+     * Resets the hit/miss counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "DispatchingConverter[converters=" + converters.size() + ", cached types=" + cache.size() + ", hits=" + hits.get() + ", misses=" + misses.get()
+                + ", hit rate=" + Math.round(getHitRate() * 1000) / 10.0 + "%]";
+    }
 }
@@ -10,6 +10,7 @@ package ch.jtde.internal.xstream;
 
 import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
 import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
 import com.thoughtworks.xstream.converters.*;
@@ -53,6 +54,7 @@ class ElementMarshaller extends ReferenceByXPathMarshaller implements IElementMa
         if (item == null)
             throw new IllegalArgumentException("Null model is not supported!");
         writer.startNode(buildTypeName(((IDataElement) item).getType(), this));
+        writeRootAttributes(writer, this);
         convertAnother(item);
         writer.endNode();
     }
@@ -65,6 +67,14 @@ class ElementMarshaller extends ReferenceByXPathMarshaller implements IElementMa
         return adapter.aliasForType(name);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IProgressMonitor getProgressMonitor() {
+        return ElementMarshallingHelper.getProgressMonitor(this);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -12,6 +12,8 @@ import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
 import ch.jtde.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.internal.xstream.TypeNameCache.TypeSpec;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
 import com.thoughtworks.xstream.converters.*;
@@ -31,6 +33,24 @@ public class ElementMarshallingHelper {
     /** Suffix for array dimension. */
     private static final String ARRAY_SUFFIX = "-array";
 
+    /** Key of the {@link DataHolder} flag indicating that primitive attributes holding their default value are omitted. */
+    public static final String OMIT_DEFAULTS = "omitDefaults";
+
+    /** Key of the {@link DataHolder} flag indicating that attributes in the {@link AttributeState#ADDED} state are omitted. */
+    public static final String SKIP_ADDED = "skipAdded";
+
+    /** Key of the {@link DataHolder} entry holding the {@link IProgressMonitor} of the operation. */
+    public static final String PROGRESS_MONITOR = "progressMonitor";
+
+    /** The number of elements the direct codec (un)marshals between two checks of the {@link #PROGRESS_MONITOR}. */
+    static final int CANCEL_CHECK_INTERVAL = 256;
+
+    /** Name of the root attribute marking files without default valued primitives. */
+    private static final String DEFAULTS_ATTRIBUTE = "defaults";
+
+    /** Value of {@link #DEFAULTS_ATTRIBUTE} if default valued primitives were omitted. */
+    private static final String DEFAULTS_OMITTED = "omitted";
+
     /** Name mapping from wrapper type to primitive type. */
     private static final Map<String, String> WRAPPER_TO_PRIMITIVE = new HashMap<String, String>();
 
@@ -85,6 +105,24 @@ public class ElementMarshallingHelper {
      * @return The type string
      */
     public static String buildTypeName(ClassDefinition type, IElementMarshallingContext context) {
+        final TypeNameCache cache = TypeNameCache.get(context);
+        String res = cache != null ? cache.getName(type) : null;
+        if (res == null) {
+            res = buildTypeName0(type, context);
+            if (cache != null)
+                cache.putName(type, res);
+        }
+        return res;
+    }
+
+    /**
+     * Builds the name string for the given concrete type.
+     * 
+     * @param type The concrete type
+     * @param context The context
+     * @return The type string
+     */
+    private static String buildTypeName0(ClassDefinition type, IElementMarshallingContext context) {
         final String name = type.getName();
         final int cnt = type.getDimensions();
         if (cnt == 0)
@@ -126,6 +164,27 @@ public class ElementMarshallingHelper {
      * @return The corresponding {@link IDataElement} or null
      */
     public static <A extends IAttribute, E extends IDataElement<A>> E createElement(String concreteType, IElementUnmarshallingContext context) {
+        final TypeNameCache cache = TypeNameCache.get(context);
+        TypeSpec spec = cache != null ? cache.getSpec(concreteType) : null;
+        if (spec == null) {
+            spec = parseTypeName(concreteType, context);
+            if (cache != null)
+                cache.putSpec(concreteType, spec);
+        }
+        final IType type = context.findType(spec.name);
+        if (type == null)
+            return null;
+        return ElementMarshallingHelper.<A, E> createElement(type, spec.primitive, spec.dimensions);
+    }
+
+    /**
+     * Parses the given type specification.
+     * 
+     * @param concreteType The type specification
+     * @param context The unmarshalling context
+     * @return The parsed specification
+     */
+    private static TypeSpec parseTypeName(String concreteType, IElementUnmarshallingContext context) {
         final int index = concreteType.indexOf(ARRAY_SUFFIX);
         int dim = 0;
         boolean primitive = false;
@@ -139,11 +198,22 @@ public class ElementMarshallingHelper {
                 primitive = true;
             }
         }
-        final String name = context.typeForAlias(concreteType);
-        final IType type = context.findType(name);
-        if (type == null)
-            return null;
-        return ElementMarshallingHelper.<A, E> createElement(type, primitive, dim);
+        return new TypeSpec(context.typeForAlias(concreteType), primitive, dim);
+    }
+
+    /**
+     * Returns the name of the element type of the given type specification.
+     * 
+     * @param concreteType The type specification (see {@link #buildTypeName(ClassDefinition, IElementMarshallingContext)})
+     * @return The specification without the array suffixes (the wrapper type name for primitive arrays)
+     */
+    static String getElementTypeName(String concreteType) {
+        final int index = concreteType.indexOf(ARRAY_SUFFIX);
+        if (index <= 0)
+            return concreteType;
+        final String name = concreteType.substring(0, index);
+        final String wrapper = PRIMITIVE_TO_WRAPPER.get(name);
+        return wrapper != null ? wrapper : name;
     }
 
     /**
@@ -166,6 +236,83 @@ public class ElementMarshallingHelper {
         }
     }
 
+    /**
+     * Writes the format options hold by the given context as attributes of the root node.
+     * 
+     * @param writer The writer positioned on the root node
+     * @param context The marshalling context
+     */
+    public static void writeRootAttributes(HierarchicalStreamWriter writer, DataHolder context) {
+        if (isOmitDefaults(context))
+            writer.addAttribute(DEFAULTS_ATTRIBUTE, DEFAULTS_OMITTED);
+    }
+
+    /**
+     * Reads the format options from the attributes of the root node into the given context.
+     * 
+     * @param reader The reader positioned on the root node
+     * @param context The unmarshalling context
+     */
+    public static void readRootAttributes(HierarchicalStreamReader reader, DataHolder context) {
+        if (DEFAULTS_OMITTED.equals(reader.getAttribute(DEFAULTS_ATTRIBUTE)))
+            context.put(OMIT_DEFAULTS, Boolean.TRUE);
+    }
+
+    /**
+     * Returns wherever primitive attributes holding their default value are omitted.
+     * 
+     * @param context The (un)marshalling context
+     * @return True if default valued primitives are omitted
+     */
+    public static boolean isOmitDefaults(DataHolder context) {
+        return Boolean.TRUE.equals(context.get(OMIT_DEFAULTS));
+    }
+
+    /**
+     * Returns wherever attributes in the {@link AttributeState#ADDED} state are omitted.
+     * 
+     * @param context The marshalling context
+     * @return True if added attributes are omitted
+     */
+    public static boolean isSkipAdded(DataHolder context) {
+        return Boolean.TRUE.equals(context.get(SKIP_ADDED));
+    }
+
+    /**
+     * Returns the monitor of the (un)marshalling operation.
+     * 
+     * @param context The (un)marshalling context
+     * @return The monitor (a {@link NullProgressMonitor} if none was set)
+     */
+    public static IProgressMonitor getProgressMonitor(DataHolder context) {
+        final IProgressMonitor pm = (IProgressMonitor) context.get(PROGRESS_MONITOR);
+        return pm != null ? pm : new NullProgressMonitor();
+    }
+
+    /**
+     * Throws a {@link OperationCanceledException} if the (un)marshalling operation was canceled.
+     * 
+     * @param context The (un)marshalling context
+     */
+    public static void checkCanceled(DataHolder context) {
+        if (getProgressMonitor(context).isCanceled())
+            throw new OperationCanceledException();
+    }
+
+    /**
+     * Returns wherever the given value is a primitive holding it's default value.
+     * 
+     * @param value The value
+     * @return True if the value is a primitive holding it's default value
+     */
+    @SuppressWarnings("rawtypes")
+    public static boolean isDefaultPrimitive(IDataElement value) {
+        if (!(value instanceof PrimitiveValue))
+            return false;
+        final PrimitiveValue<?> val = (PrimitiveValue<?>) value;
+        return val.getWrapperType().getDefaultValue().equals(val.getValue());
+    }
+
     /**
      * Writes a null value to the stream.
      * 
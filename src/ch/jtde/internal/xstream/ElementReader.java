@@ -0,0 +1,1238 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.*;
+import ch.jtde.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.model.*;
+import ch.jtde.xstream.*;
+import com.thoughtworks.xstream.converters.*;
+import com.thoughtworks.xstream.core.*;
+import com.thoughtworks.xstream.core.util.*;
+import com.thoughtworks.xstream.io.*;
+import com.thoughtworks.xstream.io.binary.*;
+import com.thoughtworks.xstream.io.path.*;
+import com.thoughtworks.xstream.io.xml.*;
+
+/**
+ * Direct {@link IElementUnmarshallingContext} building the {@link IDataElement} tree without XStream's {@link TreeUnmarshaller}.<br>
+ * Reads the format written by {@link ElementWriter} and {@link ElementMarshaller} - with xpath or id references and with or without
+ * {@link HeaderDictionary}.<br>
+ * If a lazy depth is set the content of the {@link DataElement}s from this depth on is skipped and read when their attributes get accessed (see
+ * {@link DataElement#materialize()}) - from the file if a {@link Source} for it was passed, otherwise from a binary token image recorded in memory. A
+ * subtree gets only deferred if all of it's references point into the subtree - references into a deferred subtree materialize it.<br>
+ * A single element may be read by it's path (see {@link #read(DataHolder, Source, String)}) - the subtrees besides the path are skipped and references
+ * into them are resolved by additional passes over the document.
+ * 
+ * @author M. Hautle
+ */
+class ElementReader implements IElementUnmarshallingContext {
+    /** Name of the attribute holding the concrete type of a field value. */
+    private static final String CLASS_ATTRIBUTE = "class";
+
+    /** The number of read children of the root element from which the {@link IReadListener} gets notified the first time. */
+    private static final int FIRST_PAGE = 64;
+
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /** The reader (path tracking in the xpath mode). */
+    private final HierarchicalStreamReader reader;
+
+    /** Tracker holding the path of the current node (null in the id mode). */
+    private final PathTracker pathTracker;
+
+    /** Tracker holding the node path of the current node for {@link #subtreeSource} (null if not set). */
+    private final PathTracker locator;
+
+    /** The source re-opening the file for the deferred subtrees or null to keep their binary token image in memory. */
+    private final Source subtreeSource;
+
+    /** Flag indicating if the node names are escaped (references must be unescaped in this case). */
+    private final boolean xmlFriendly;
+
+    /** Lookup for the converters of non {@link IDataElement} values. */
+    private final ConverterLookup converterLookup;
+
+    /** The element depth from which the content of {@link DataElement}s gets deferred (0 to read everything at once). */
+    private final int lazyDepth;
+
+    /** The read elements and the deferred subtrees (shared with the readers of the subtrees materialized while the file gets read). */
+    private final Scope scope;
+
+    /** Stack of {@link IDataElement}s to populate. */
+    private final FastStack elements = new FastStack(16);
+
+    /** The validation list. */
+    private final PrioritizedList validationList = new PrioritizedList();
+
+    /** The type of the value currently read by {@link #convertAnother(Object, Class, Converter)}. */
+    @SuppressWarnings("rawtypes")
+    private Class requiredType;
+
+    /** The dataholder. */
+    private DataHolder dataHolder;
+
+    /** The dictionary of the read file or null. */
+    private HeaderDictionary dictionary;
+
+    /** The state passed to the deferred subtrees or null if not yet created. */
+    private Shared shared;
+
+    /** The source for additional passes over the document (only set while reading a single path). */
+    private Source source;
+
+    /** The listener notified about the read children of the root element or null. */
+    private IReadListener listener;
+
+    /** The number of read children of the root element from which {@link #listener} gets notified next. */
+    private int nextPage = FIRST_PAGE;
+
+    /** The number of read elements (the monitor gets checked every {@link ElementMarshallingHelper#CANCEL_CHECK_INTERVAL} elements). */
+    private int readElements;
+
+    /**
+     * Default constructor.
+     * 
+     * @param adapter The owning adapter
+     * @param reader The reader to use
+     */
+    public ElementReader(XStreamAdapter adapter, HierarchicalStreamReader reader) {
+        this(adapter, reader, null);
+    }
+
+    /**
+     * Constructor for a reader whose deferred subtrees get read from the file again.
+     * 
+     * @param adapter The owning adapter
+     * @param reader The reader to use
+     * @param subtreeSource The source re-opening the file for the deferred subtrees or null to keep their binary token image in memory
+     */
+    public ElementReader(XStreamAdapter adapter, HierarchicalStreamReader reader, Source subtreeSource) {
+        this.adapter = adapter;
+        this.subtreeSource = subtreeSource;
+        if (isIdReferenced(reader)) {
+            pathTracker = null;
+            locator = subtreeSource != null ? new PathTracker() : null;
+        } else {
+            pathTracker = new PathTracker();
+            locator = pathTracker;
+        }
+        this.reader = locator != null ? new PathTrackingReader(reader, locator) : reader;
+        xmlFriendly = reader.underlyingReader() instanceof XmlFriendlyReader;
+        converterLookup = adapter.getConverterLookup();
+        lazyDepth = adapter.getLazyDepth();
+        scope = new Scope();
+    }
+
+    /**
+     * Constructor for the reader of a deferred subtree.
+     * 
+     * @param shared The state of the reader which recorded the subtree
+     * @param reader The reader positioned on the root node of the subtree (in the file or in it's image)
+     * @param path The absolute path of the subtree or null in the id mode
+     * @param location The node path of the subtree if it gets read from the file or null if it gets read from it's image
+     */
+    private ElementReader(Shared shared, HierarchicalStreamReader reader, Path path, Path location) {
+        adapter = shared.adapter;
+        subtreeSource = shared.subtreeSource;
+        if (location != null) {
+            locator = createTracker(location);
+            pathTracker = path != null ? locator : null;
+        } else {
+            locator = path != null ? createTracker(path) : null;
+            pathTracker = locator;
+        }
+        this.reader = locator != null ? new PathTrackingReader(reader, locator) : reader;
+        // the image holds unescaped names and absolute references, the file the ones it was written with
+        xmlFriendly = location != null && reader.underlyingReader() instanceof XmlFriendlyReader;
+        converterLookup = adapter.getConverterLookup();
+        lazyDepth = shared.lazyDepth;
+        scope = shared.scope;
+        dataHolder = shared.dataHolder;
+        dictionary = shared.dictionary;
+        this.shared = shared;
+    }
+
+    /**
+     * Constructor for an additional pass over the document.
+     * 
+     * @param owner The reader of the first pass
+     * @param reader The reader positioned on the root node
+     */
+    private ElementReader(ElementReader owner, HierarchicalStreamReader reader) {
+        adapter = owner.adapter;
+        // the subtrees deferred by a pass keep their image
+        subtreeSource = null;
+        if (owner.pathTracker == null) {
+            pathTracker = null;
+            this.reader = reader;
+        } else {
+            pathTracker = new PathTracker();
+            this.reader = new PathTrackingReader(reader, pathTracker);
+        }
+        locator = pathTracker;
+        xmlFriendly = owner.xmlFriendly;
+        converterLookup = adapter.getConverterLookup();
+        lazyDepth = owner.lazyDepth;
+        scope = owner.scope;
+        dataHolder = owner.dataHolder;
+        dictionary = owner.dictionary;
+        source = owner.source;
+    }
+
+    /**
+     * Creates a path tracker positioned on the parent of the given path.<br>
+     * The siblings in front of each path element are pushed and popped again, so the tracker computes the same indices as while reading the file.
+     * 
+     * @param path The absolute path
+     * @return The tracker
+     */
+    private static PathTracker createTracker(Path path) {
+        final PathTracker tracker = new PathTracker();
+        final String[] chunks = path.toString().split("/");
+        // the first chunk is the empty string in front of the leading '/'
+        for (int i = 1; i < chunks.length; i++) {
+            final Step step = Step.parseNode(chunks[i]);
+            for (int j = 1; j < step.index; j++) {
+                tracker.pushElement(step.name);
+                tracker.popElement();
+            }
+            // the last element gets pushed by the path tracking reader
+            if (i < chunks.length - 1)
+                tracker.pushElement(step.name);
+        }
+        return tracker;
+    }
+
+    /**
+     * Returns wherever the document of the given reader uses id references.<br>
+     * The reader must be positioned on the root node.
+     * 
+     * @param reader The reader
+     * @return True if id references are used
+     */
+    static boolean isIdReferenced(HierarchicalStreamReader reader) {
+        return ElementWriter.ID_REFERENCES.equals(reader.getAttribute(ElementWriter.REFERENCES_ATTRIBUTE));
+    }
+
+    /**
+     * Returns wherever the document of the given reader can only be read by this reader (because it uses id references or a dictionary).<br>
+     * The reader must be positioned on the root node.
+     * 
+     * @param reader The reader
+     * @return True if the document requires the direct codec
+     */
+    static boolean requiresDirectCodec(HierarchicalStreamReader reader) {
+        return isIdReferenced(reader) || HeaderDictionary.isPresent(reader);
+    }
+
+    /**
+     * Reads the root element.
+     * 
+     * @param dataHolder The data holder to use or null
+     * @return The root element
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(DataHolder dataHolder) {
+        return read(dataHolder, null);
+    }
+
+    /**
+     * Reads the root element.<br>
+     * The given listener gets notified when the first page of children of a root collection or map was read and then each time their number doubled
+     * (see {@link #publish(IDataElement)}). The children of the root get read while holding the lock of the scope, so published elements may
+     * materialize their deferred subtrees meanwhile.
+     * 
+     * @param dataHolder The data holder to use or null
+     * @param listener The listener or null
+     * @return The root element
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(DataHolder dataHolder, IReadListener listener) {
+        this.dataHolder = dataHolder;
+        this.listener = listener;
+        final IDataElement res = convertAnother(null, readHeader());
+        runValidations();
+        // deferred subtrees materialized from now on get their own scope
+        scope.close();
+        return res;
+    }
+
+    /**
+     * Reads the element at the given path.<br>
+     * The path consists of attribute names and zero based indices of collection entries separated by '/' (f.e. <code>/orders/17/customer</code>) - the
+     * index of a map entry addresses it's value. Only the addressed element gets built, the other subtrees are skipped. References into skipped subtrees
+     * are resolved by additional passes over the document.
+     * 
+     * @param dataHolder The data holder to use or null
+     * @param source The source of the readers for the additional passes
+     * @param path The path of the element
+     * @return The element (null if the path denotes a null value)
+     * @throws ConversionException If the path does not exist
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(DataHolder dataHolder, Source source, String path) {
+        this.dataHolder = dataHolder;
+        this.source = source;
+        final List<Step> steps = new ArrayList<Step>();
+        for (String segment : path.split("/"))
+            if (segment.length() > 0)
+                steps.add(Step.parse(segment));
+        final IDataElement res = navigate(readHeader(), steps);
+        runValidations();
+        // deferred subtrees materialized from now on get their own scope
+        scope.close();
+        return res;
+    }
+
+    /**
+     * Reads the entries written by {@link ElementWriter#writeEntries(List, DataHolder)}.
+     * 
+     * @param dataHolder The data holder to use or null
+     * @return The entries (null entries represent null values)
+     */
+    public List<IDataElement<IAttribute>> readEntries(DataHolder dataHolder) {
+        this.dataHolder = dataHolder;
+        if (!ElementWriter.ENTRIES_NODE.equals(reader.getNodeName()))
+            throw new ConversionException("Missing entries node!");
+        readRootAttributes(reader, this);
+        final List<IDataElement<IAttribute>> res = new ArrayList<IDataElement<IAttribute>>();
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            final String name = reader.getNodeName();
+            res.add(isNullValue(name) ? null : convertAnother(null, ElementMarshallingHelper.<IAttribute, IDataElement<IAttribute>> createElement(name, this)));
+            reader.moveUp();
+        }
+        runValidations();
+        scope.close();
+        return res;
+    }
+
+    /**
+     * Creates the root element and reads the root attributes and the dictionary.
+     * 
+     * @return The empty root element
+     */
+    private IDataElement<IAttribute> readHeader() {
+        final IDataElement<IAttribute> element = createElement(reader.getNodeName(), this);
+        if (element == null)
+            throw new ConversionException("Unknown root element type!");
+        readRootAttributes(reader, this);
+        if (HeaderDictionary.isPresent(reader)) {
+            dictionary = HeaderDictionary.read(reader);
+            // the names of this file differ from the ones of the adapter
+            put(TypeNameCache.KEY, new TypeNameCache());
+        }
+        return element;
+    }
+
+    /**
+     * Follows the given steps from the current node and reads the element at the end.<br>
+     * The elements along the path are only created, their content is skipped.
+     * 
+     * @param root The empty element of the current node
+     * @param steps The steps
+     * @return The element (null if the path denotes a null value)
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElement navigate(IDataElement<IAttribute> root, List<Step> steps) {
+        if (steps.isEmpty())
+            return convertAnother(null, root);
+        IDataElement current = root;
+        // flag indicating if the current node is a map entry
+        boolean entry = false;
+        for (int i = 0, cnt = steps.size(); i < cnt; i++) {
+            final Step step = steps.get(i);
+            final boolean last = i == cnt - 1;
+            // chunked collections are accessed through their index
+            final String chunks = step.name == null && current instanceof IndexCollectionElement ? reader.getAttribute(BlobWriter.CHUNKS_ATTRIBUTE) : null;
+            if (chunks != null)
+                return walk(getChunkEntry(chunks, step), steps.subList(i + 1, cnt));
+            if (!moveTo(step)) {
+                // omitted attributes hold their default value
+                final ElementAttribute attr = !entry && current instanceof DataElement ? getAttribute((DataElement) current, step.name) : null;
+                if (last && attr != null)
+                    return attr.getValue();
+                throw new ConversionException("No element found for " + step);
+            }
+            if (!entry && current instanceof MapElement) {
+                entry = true;
+                // an index addresses the value of the entry
+                if (step.name != null)
+                    continue;
+                if (!moveTo(new Step(null, 2)))
+                    throw new ConversionException("No value found for " + step);
+            }
+            final String reference = reader.getAttribute(ElementWriter.REFERENCE_ATTRIBUTE);
+            if (reference != null) {
+                final Object key = getReferenceKey(reference);
+                if (last)
+                    return (IDataElement) resolve(key);
+                // continue at the referenced node
+                return pass(getPath(key), steps.subList(i + 1, cnt));
+            }
+            final IDataElement<IAttribute> el = createChild(current, entry);
+            entry = false;
+            if (el == null) {
+                if (last)
+                    return null;
+                throw new ConversionException("Null value found for " + step);
+            }
+            if (last)
+                return convertAnother(current, el);
+            current = el;
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Returns the entry of a chunked collection.
+     * 
+     * @param chunks The value of the {@link BlobWriter#CHUNKS_ATTRIBUTE}
+     * @param step The step addressing the entry
+     * @return The entry or null
+     */
+    private IDataElement<IAttribute> getChunkEntry(String chunks, Step step) {
+        final BlobReader blobs = (BlobReader) get(BlobReader.KEY);
+        if (blobs == null)
+            throw new ConversionException("The side-car file of the chunks " + chunks + " is unknown!");
+        final ChunkedContent content = blobs.getChunks(chunks);
+        if (step.index > content.size())
+            throw new ConversionException("No element found for " + step);
+        return content.get(step.index - 1);
+    }
+
+    /**
+     * Follows the given steps through the attributes of an already read element.
+     * 
+     * @param element The element
+     * @param steps The steps
+     * @return The element at the end (null if the path denotes a null value)
+     */
+    @SuppressWarnings("rawtypes")
+    private static IDataElement walk(IDataElement element, List<Step> steps) {
+        IDataElement current = element;
+        for (Step step : steps) {
+            if (current == null)
+                throw new ConversionException("Null value found in front of " + step);
+            final IAttribute attr = getChild(current, step);
+            if (attr == null)
+                throw new ConversionException("No element found for " + step);
+            current = attr.getValue();
+        }
+        return current;
+    }
+
+    /**
+     * Returns the attribute of the given element addressed by the passed step.
+     * 
+     * @param element The element
+     * @param step The step (attribute name or index)
+     * @return The attribute or null
+     */
+    @SuppressWarnings("rawtypes")
+    private static IAttribute getChild(IDataElement element, Step step) {
+        final int cnt = element.getChildCount();
+        if (step.name == null)
+            return step.index <= cnt ? element.getChild(step.index - 1) : null;
+        for (int i = 0; i < cnt; i++)
+            if (step.name.equals(element.getChild(i).getName()))
+                return element.getChild(i);
+        return null;
+    }
+
+    /**
+     * Moves down to the child node matching the given step.
+     * 
+     * @param step The step
+     * @return True if the reader was moved down, false if there is no such node (the reader remains on the current node)
+     */
+    private boolean moveTo(Step step) {
+        return moveTo(reader, step);
+    }
+
+    /**
+     * Moves the given reader down to the child node matching the given step.
+     * 
+     * @param reader The reader
+     * @param step The step
+     * @return True if the reader was moved down, false if there is no such node (the reader remains on the current node)
+     */
+    private static boolean moveTo(HierarchicalStreamReader reader, Step step) {
+        int found = 0;
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            if ((step.name == null || step.name.equals(reader.getNodeName())) && ++found == step.index)
+                return true;
+            reader.moveUp();
+        }
+        return false;
+    }
+
+    /**
+     * Creates the empty element of the current node.
+     * 
+     * @param parent The element of the parent node
+     * @param entry True if the parent node is a map entry
+     * @return The element or null if the node represents a null value
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElement<IAttribute> createChild(IDataElement parent, boolean entry) {
+        final String name = reader.getNodeName();
+        if (entry || !(parent instanceof DataElement))
+            return isNullValue(name) ? null : ElementMarshallingHelper.<IAttribute, IDataElement<IAttribute>> createElement(name, this);
+        final ElementAttribute attr = getAttribute((DataElement) parent, name);
+        if (attr == null)
+            throw new ConversionException("Unknown attribute " + name + " of " + parent.getType().getName());
+        final ClassDefinition lowerBound = attr.getLowerBound();
+        // primitive values were already created by the factory
+        if (lowerBound.getCategory().isPrimitive())
+            return attr.getValue();
+        final String concreteType = reader.getAttribute(CLASS_ATTRIBUTE);
+        if (concreteType == null || concreteType.length() == 0)
+            return ElementMarshallingHelper.<IAttribute, IDataElement<IAttribute>> createElement(lowerBound.getType(),
+                    ElementCategory.PRIMITIVE_ARRAY == lowerBound.getCategory(), lowerBound.getDimensions());
+        return ElementMarshallingHelper.<IAttribute, IDataElement<IAttribute>> createElement(concreteType, this);
+    }
+
+    /**
+     * Returns the attribute with the given name.
+     * 
+     * @param element The element
+     * @param name The attribute name or null
+     * @return The attribute or null
+     */
+    private static ElementAttribute getAttribute(DataElement element, String name) {
+        for (int i = 0, cnt = element.getChildCount(); i < cnt; i++) {
+            final ElementAttribute attr = element.getChild(i);
+            if (attr.getName().equals(name))
+                return attr;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the element at the given node path in an additional pass over the document.
+     * 
+     * @param path The absolute node path
+     * @param steps Additional steps from the node or an empty list
+     * @return The element (null if the path denotes a null value)
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElement pass(Path path, List<Step> steps) {
+        final List<Step> all = new ArrayList<Step>();
+        final String[] chunks = path.toString().split("/");
+        // skip the empty string in front of the leading '/' and the root node
+        for (int i = 2; i < chunks.length; i++)
+            all.add(Step.parseNode(chunks[i]));
+        all.addAll(steps);
+        final HierarchicalStreamReader in = source.open();
+        try {
+            final ElementReader pass = new ElementReader(this, in);
+            // the dictionary is already known
+            if (HeaderDictionary.isPresent(in)) {
+                in.moveDown();
+                in.moveUp();
+            }
+            final IDataElement res = pass.navigate(ElementMarshallingHelper.<IAttribute, IDataElement<IAttribute>> createElement(in.getNodeName(), pass), all);
+            pass.runValidations();
+            return res;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the node path of the element with the given key.
+     * 
+     * @param key The path or the id of the element
+     * @return The absolute node path
+     * @throws ConversionException If no element has the given id
+     */
+    private Path getPath(Object key) {
+        if (pathTracker != null)
+            return (Path) key;
+        final PathTracker tracker = new PathTracker();
+        final HierarchicalStreamReader in = source.open();
+        try {
+            final Path res = findId(new PathTrackingReader(in, tracker), tracker, (String) key);
+            if (res == null)
+                throw new ConversionException("No element with the id " + key + " found");
+            return res;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Searches the node with the given id in the subtree of the current node.
+     * 
+     * @param reader The path tracking reader
+     * @param tracker The tracker of the reader
+     * @param id The id
+     * @return The path of the node or null
+     */
+    private static Path findId(HierarchicalStreamReader reader, PathTracker tracker, String id) {
+        if (id.equals(reader.getAttribute(ElementWriter.ID_ATTRIBUTE)))
+            return tracker.getPath();
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            final Path res = findId(reader, tracker, id);
+            if (res != null)
+                return res;
+            reader.moveUp();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the content of a deferred subtree.
+     * 
+     * @param element The element to populate
+     */
+    void readSubtree(DataElement element) {
+        convertAnother(null, element);
+        runValidations();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <A extends IAttribute, E extends IDataElement<A>> E convertAnother(IDataElement parent, E value) {
+        if (++readElements % ElementMarshallingHelper.CANCEL_CHECK_INTERVAL == 0)
+            ElementMarshallingHelper.checkCanceled(this);
+        if (listener == null || elements.size() != 1)
+            return convert(value);
+        publish((IDataElement) elements.peek());
+        synchronized (scope) {
+            return convert(value);
+        }
+    }
+
+    /**
+     * Notifies {@link #listener} if the next page of children of the given root element was read.<br>
+     * Only the children of collections and maps get published: their entry beeing read is the last child, so the ones in front of it are complete. The
+     * attributes of other elements may be read in any order.
+     * 
+     * @param root The root element
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void publish(IDataElement root) {
+        if (!(root instanceof IExtendableDataElement))
+            return;
+        final int count = root.getChildCount() - 1;
+        if (count < nextPage)
+            return;
+        nextPage = count * 2;
+        listener.childrenRead(root, count);
+    }
+
+    /**
+     * Reads the given element or resolves it's reference.
+     * 
+     * @param value The element to populate
+     * @return The read element
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <A extends IAttribute, E extends IDataElement<A>> E convert(E value) {
+        final String reference = reader.getAttribute(ElementWriter.REFERENCE_ATTRIBUTE);
+        if (reference != null)
+            return (E) resolve(getReferenceKey(reference));
+        final Object key = pathTracker != null ? pathTracker.getPath() : reader.getAttribute(ElementWriter.ID_ATTRIBUTE);
+        // an additional pass may reach an element which was already read
+        if (source != null && key != null) {
+            final Object existing = scope.values.get(key);
+            if (existing != null)
+                return (E) existing;
+        }
+        // registered before the content gets read, so nested elements may reference their ancestors
+        if (key != null)
+            scope.values.put(key, value);
+        if (lazyDepth > 0 && elements.size() >= lazyDepth && value instanceof DataElement) {
+            defer((DataElement) value, key);
+            return value;
+        }
+        elements.push(value);
+        final E res = (E) unmarshal(value);
+        elements.popSilently();
+        if (key != null && res != value)
+            scope.values.put(key, res);
+        return res;
+    }
+
+    /**
+     * Returns the element registered under the given key.<br>
+     * Deferred subtrees containing the key get materialized.
+     * 
+     * @param key The path or the id of the element
+     * @return The element or null
+     */
+    private Object resolve(Object key) {
+        Object res = scope.values.get(key);
+        DataElement owner;
+        // a materialized subtree may defer the subtree containing the key again
+        while (res == null && (owner = removeDeferred(key)) != null) {
+            owner.materialize();
+            res = scope.values.get(key);
+        }
+        // the element lies in a skipped subtree
+        if (res == null && source != null)
+            res = pass(getPath(key), Collections.<Step> emptyList());
+        return res;
+    }
+
+    /**
+     * Removes the deferred subtree containing the given key from {@link Scope#deferred}.
+     * 
+     * @param key The path or the id of the element
+     * @return The root element of the subtree or null
+     */
+    private DataElement removeDeferred(Object key) {
+        if (scope.deferred.isEmpty())
+            return null;
+        if (pathTracker == null)
+            return scope.deferred.remove(key);
+        // in the xpath mode the subtrees are registered by the path of their root
+        final String path = key.toString();
+        for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+            final DataElement res = scope.deferred.remove(new Path(path.substring(0, i)));
+            if (res != null)
+                return res;
+        }
+        return null;
+    }
+
+    /**
+     * Skips the content of the given element instead of reading it.<br>
+     * If the file can be re-opened only the node path of the element gets kept, otherwise it's content gets recorded as binary token image. The element
+     * gets materialized at once if it's subtree references elements outside of it.
+     * 
+     * @param element The element
+     * @param key The path (xpath mode) or the id of the element
+     */
+    private void defer(DataElement element, Object key) {
+        final Path path = pathTracker != null ? (Path) key : null;
+        final Set<String> ids = path == null ? new HashSet<String>() : null;
+        final boolean selfContained;
+        if (subtreeSource != null) {
+            final Path location = locator.getPath();
+            selfContained = record(null, path, ids);
+            element.setDeferredContent(new Subtree(getShared(), path, location));
+        } else {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+            final HierarchicalStreamWriter writer = new BinaryStreamWriter(out);
+            selfContained = record(writer, path, ids);
+            writer.close();
+            element.setDeferredContent(new Subtree(getShared(), path, out.toByteArray()));
+        }
+        // outgoing references must be resolved while the file gets read
+        if (!selfContained) {
+            element.materialize();
+            return;
+        }
+        if (path != null) {
+            scope.deferred.put(path, element);
+        } else {
+            for (String id : ids)
+                scope.deferred.put(id, element);
+        }
+    }
+
+    /**
+     * Copies the current node with all it's children into the given writer.<br>
+     * Relative xpath references are written as unescaped absolute paths.
+     * 
+     * @param writer The writer or null to just skip the node
+     * @param root The path of the recorded subtree or null in the id mode
+     * @param ids Set collecting the ids defined in the subtree (null in the xpath mode)
+     * @return True if all references of the node point into the subtree
+     */
+    private boolean record(HierarchicalStreamWriter writer, Path root, Set<String> ids) {
+        boolean res = true;
+        if (writer != null)
+            writer.startNode(reader.getNodeName());
+        for (int i = 0, cnt = reader.getAttributeCount(); i < cnt; i++) {
+            final String name = reader.getAttributeName(i);
+            String value = reader.getAttribute(i);
+            if (ElementWriter.REFERENCE_ATTRIBUTE.equals(name)) {
+                if (root != null) {
+                    final Path target = (Path) getReferenceKey(value);
+                    res &= root.isAncestor(target);
+                    value = target.toString();
+                } else {
+                    // ids are defined in front of their references
+                    res &= ids.contains(value);
+                }
+            } else if (ids != null && ElementWriter.ID_ATTRIBUTE.equals(name)) {
+                ids.add(value);
+            }
+            if (writer != null)
+                writer.addAttribute(name, value);
+        }
+        if (writer != null) {
+            final String value = reader.getValue();
+            if (value != null && value.length() > 0)
+                writer.setValue(value);
+        }
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            res &= record(writer, root, ids);
+            reader.moveUp();
+        }
+        if (writer != null)
+            writer.endNode();
+        return res;
+    }
+
+    /**
+     * Returns the state passed to the deferred subtrees.
+     * 
+     * @return The state
+     */
+    private Shared getShared() {
+        if (shared == null)
+            shared = new Shared(adapter, getDataHolder(), dictionary, lazyDepth, subtreeSource, scope);
+        return shared;
+    }
+
+    /**
+     * Reads the content of the given element.
+     * 
+     * @param element The element to populate
+     * @return The populated element
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private IDataElement unmarshal(IDataElement element) {
+        final Class<? extends IDataElement> type = element.getClass();
+        // fast path for the built-in values
+        if (type == PrimitiveValue.class) {
+            final PrimitiveValue value = (PrimitiveValue) element;
+            value.setValue(convertAnother(value, value.getWrapperType().getWrapperType()));
+            return value;
+        }
+        if (type == WrapperTypeValue.class) {
+            final WrapperTypeValue value = (WrapperTypeValue) element;
+            value.setValue(convertAnother(value, getWrapperFromName(value.getType().getName())));
+            return value;
+        }
+        if (type == StringValue.class || type == StringBasedValue.class) {
+            final IValueElement value = (IValueElement) element;
+            final String token = dictionary != null ? reader.getAttribute(HeaderDictionary.STRING_ATTRIBUTE) : null;
+            value.setValue(token != null ? dictionary.getString(token) : convertAnother(value, String.class));
+            return value;
+        }
+        return getConverter(type).unmarshal(reader, this);
+    }
+
+    /**
+     * Returns the key of the given reference.
+     * 
+     * @param reference The reference
+     * @return The referenced path or id
+     */
+    private Object getReferenceKey(String reference) {
+        if (pathTracker == null)
+            return reference;
+        final Path path = new Path(xmlFriendly ? ((XmlFriendlyReader) reader.underlyingReader()).unescapeXmlName(reference) : reference);
+        // absolute references start with '/'
+        return reference.charAt(0) != '/' ? pathTracker.getPath().apply(path) : path;
+    }
+
+    /**
+     * Returns the converter for the given element type.
+     * 
+     * @param type The element type
+     * @return The converter
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElementConverter getConverter(Class<? extends IDataElement> type) {
+        return adapter.getDispatcher().lookupConverterForType(type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Object convertAnother(Object current, Class type) {
+        return convertAnother(current, type, converterLookup.lookupConverterForType(type));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Object convertAnother(Object current, Class type, Converter converter) {
+        final Class previous = requiredType;
+        requiredType = type;
+        try {
+            return converter.unmarshal(reader, this);
+        } finally {
+            requiredType = previous;
+        }
+    }
+
+    /**
+     * Executes the validations hold in {@link #validationList}.
+     */
+    @SuppressWarnings("unchecked")
+    private void runValidations() {
+        final Iterator<Runnable> validations = validationList.iterator();
+        while (validations.hasNext())
+            validations.next().run();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends IAttribute, E extends IDataElement<A>> E getCurrentElement() {
+        return (E) elements.peek();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object currentObject() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Class getRequiredType() {
+        return requiredType;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String typeForAlias(String alias) {
+        final String name = dictionary != null ? dictionary.getType(alias) : null;
+        return name != null ? name : adapter.typeForAlias(alias);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IProgressMonitor getProgressMonitor() {
+        return ElementMarshallingHelper.getProgressMonitor(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IType findType(String name) {
+        try {
+            return Activator.getTypeCache().findType(adapter.getProject(), name);
+        } catch (JavaModelException e) {
+            throw new ConversionException("Error while looking up " + name, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCompletionCallback(Runnable work, int priority) {
+        validationList.add(work, priority);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object key) {
+        return getDataHolder().get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(Object key, Object value) {
+        getDataHolder().put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Iterator keys() {
+        return getDataHolder().keys();
+    }
+
+    /**
+     * Returns the data holder. It will be created if it does not yet exist.
+     * 
+     * @return The data holder
+     */
+    private DataHolder getDataHolder() {
+        if (dataHolder == null)
+            dataHolder = new MapBackedDataHolder();
+        return dataHolder;
+    }
+
+    /**
+     * Source of the readers for additional passes over a document.
+     * 
+     * @author M. Hautle
+     */
+    interface Source {
+        /**
+         * Opens a new reader positioned on the root node.
+         * 
+         * @return The reader
+         */
+        HierarchicalStreamReader open();
+    }
+
+    /**
+     * Step of a path selecting a child node.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Step {
+        /** The name of the node or null to match any node. */
+        final String name;
+
+        /** The one based index of the node among the matching nodes. */
+        final int index;
+
+        /**
+         * Default constructor.
+         * 
+         * @param name The name of the node or null to match any node
+         * @param index The one based index of the node among the matching nodes
+         */
+        Step(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        /**
+         * Parses a segment of a path passed to {@link ElementReader#read(DataHolder, Source, String)}.
+         * 
+         * @param segment An attribute name or a zero based index
+         * @return The step
+         */
+        static Step parse(String segment) {
+            for (int i = 0; i < segment.length(); i++)
+                if (!Character.isDigit(segment.charAt(i)))
+                    return new Step(segment, 1);
+            return new Step(null, Integer.parseInt(segment) + 1);
+        }
+
+        /**
+         * Parses a chunk of a node path (<code>name</code> or <code>name[index]</code>).
+         * 
+         * @param chunk The chunk
+         * @return The step
+         */
+        static Step parseNode(String chunk) {
+            final int bracket = chunk.indexOf('[');
+            if (bracket < 0)
+                return new Step(chunk, 1);
+            return new Step(chunk.substring(0, bracket), Integer.parseInt(chunk.substring(bracket + 1, chunk.length() - 1)));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return name != null ? (index > 1 ? name + "[" + index + "]" : name) : String.valueOf(index - 1);
+        }
+    }
+
+    /**
+     * The read elements and the deferred subtrees of a read.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Scope {
+        /** The read elements by their path or their id. */
+        final Map<Object, Object> values = new HashMap<Object, Object>();
+
+        /** The root elements of the deferred subtrees by their path (xpath mode) or by the ids defined in them. */
+        final Map<Object, DataElement> deferred = new HashMap<Object, DataElement>();
+
+        /** Flag indicating if the read is over. */
+        boolean closed;
+
+        /**
+         * Marks the read as over and releases the registered elements.
+         */
+        synchronized void close() {
+            closed = true;
+            values.clear();
+            deferred.clear();
+        }
+    }
+
+    /**
+     * The state of a read passed to the readers of it's deferred subtrees.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Shared {
+        /** The owning adapter. */
+        final XStreamAdapter adapter;
+
+        /** The dataholder. */
+        final DataHolder dataHolder;
+
+        /** The dictionary of the read file or null. */
+        final HeaderDictionary dictionary;
+
+        /** The element depth from which the content of {@link DataElement}s gets deferred. */
+        final int lazyDepth;
+
+        /** The source re-opening the file for the deferred subtrees or null if they hold their binary token image. */
+        final Source subtreeSource;
+
+        /** The scope of the read. */
+        final Scope scope;
+
+        /**
+         * Default constructor.
+         * 
+         * @param adapter The owning adapter
+         * @param dataHolder The dataholder
+         * @param dictionary The dictionary of the read file or null
+         * @param lazyDepth The element depth from which the content of {@link DataElement}s gets deferred
+         * @param subtreeSource The source re-opening the file for the deferred subtrees or null if they hold their binary token image
+         * @param scope The scope of the read
+         */
+        Shared(XStreamAdapter adapter, DataHolder dataHolder, HeaderDictionary dictionary, int lazyDepth, Source subtreeSource, Scope scope) {
+            this.adapter = adapter;
+            this.dataHolder = dataHolder;
+            this.dictionary = dictionary;
+            this.lazyDepth = lazyDepth;
+            this.subtreeSource = subtreeSource;
+            this.scope = scope;
+        }
+
+        /**
+         * Returns a copy of this state with a new scope.
+         * 
+         * @return The copy
+         */
+        Shared fork() {
+            return new Shared(adapter, dataHolder, dictionary, lazyDepth, subtreeSource, new Scope());
+        }
+    }
+
+    /**
+     * Deferred content of a {@link DataElement} holding the node path of it's subtree in the file or the binary token image of the subtree.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Subtree implements IDeferredContent {
+        /** The state of the read which recorded the subtree. */
+        private final Shared shared;
+
+        /** The absolute path of the subtree or null in the id mode. */
+        private final Path path;
+
+        /** The node path of the subtree in the file or null if the image is set. */
+        private final Path location;
+
+        /** The binary token image of the subtree or null if it gets read from the file. */
+        private final byte[] image;
+
+        /**
+         * Constructor for a subtree read from the file.
+         * 
+         * @param shared The state of the read which deferred the subtree
+         * @param path The absolute path of the subtree or null in the id mode
+         * @param location The node path of the subtree in the file
+         */
+        Subtree(Shared shared, Path path, Path location) {
+            this.shared = shared;
+            this.path = path;
+            this.location = location;
+            image = null;
+        }
+
+        /**
+         * Constructor for a subtree read from it's image.
+         * 
+         * @param shared The state of the read which recorded the subtree
+         * @param path The absolute path of the subtree or null in the id mode
+         * @param image The binary token image of the subtree
+         */
+        Subtree(Shared shared, Path path, byte[] image) {
+            this.shared = shared;
+            this.path = path;
+            this.image = image;
+            location = null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void load(DataElement element) {
+            // the subtree may be loaded by another thread while the file gets still read (see ElementReader#read(DataHolder, IReadListener))
+            synchronized (shared.scope) {
+                // materialized meanwhile by another thread
+                if (element.getDeferredContent() != this)
+                    return;
+                final HierarchicalStreamReader in = image != null ? new BinaryStreamReader(new ByteArrayInputStream(image)) : open();
+                try {
+                    element.setDeferredContent(null);
+                    // once the file was read the subtree gets read with it's own scope
+                    final Shared state = shared.scope.closed ? shared.fork() : shared;
+                    new ElementReader(state, in, path, location).readSubtree(element);
+                    if (state != shared)
+                        state.scope.close();
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        /**
+         * Re-opens the file and moves down to the root node of the subtree.
+         * 
+         * @return The reader positioned on the root node of the subtree
+         * @throws ConversionException If the node does not exist anymore
+         */
+        private HierarchicalStreamReader open() {
+            final HierarchicalStreamReader in = shared.subtreeSource.open();
+            final String[] chunks = location.toString().split("/");
+            // skip the empty string in front of the leading '/' and the root node
+            for (int i = 2; i < chunks.length; i++) {
+                if (!moveTo(in, Step.parseNode(chunks[i]))) {
+                    in.close();
+                    throw new ConversionException("The deferred node " + location + " does not exist anymore");
+                }
+            }
+            return in;
+        }
+    }
+}
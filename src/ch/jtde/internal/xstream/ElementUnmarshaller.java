@@ -10,7 +10,9 @@ package ch.jtde.internal.xstream;
 
 import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
 import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
 import com.thoughtworks.xstream.*;
@@ -65,6 +67,7 @@ class ElementUnmarshaller extends ReferenceByXPathUnmarshaller implements IEleme
         final IDataElement<IAttribute> element = createElement(name, this);
         if (element == null)
             throw new ConversionException("Unknown root element type!");
+        readRootAttributes(reader, this);
         final Object result = convertAnother(null, element);
         runValidations();
         return result;
@@ -130,12 +133,20 @@ class ElementUnmarshaller extends ReferenceByXPathUnmarshaller implements IEleme
         return adapter.typeForAlias(alias);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IProgressMonitor getProgressMonitor() {
+        return ElementMarshallingHelper.getProgressMonitor(this);
+    }
+
     /**
      * {@inheritDoc}
      */
     public IType findType(String name) {
         try {
-            return adapter.getProject().findType(name);
+            return Activator.getTypeCache().findType(adapter.getProject(), name);
         } catch (JavaModelException e) {
             throw new ConversionException("Error while looking up " + name, e);
         }
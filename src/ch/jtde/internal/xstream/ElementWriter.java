@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import ch.jtde.internal.model.*;
+import ch.jtde.model.*;
+import ch.jtde.xstream.*;
+import com.thoughtworks.xstream.converters.*;
+import com.thoughtworks.xstream.core.*;
+import com.thoughtworks.xstream.core.AbstractReferenceMarshaller.ReferencedImplicitElementException;
+import com.thoughtworks.xstream.core.util.*;
+import com.thoughtworks.xstream.io.*;
+import com.thoughtworks.xstream.io.path.*;
+
+/**
+ * Direct {@link IElementMarshallingContext} walking the {@link IDataElement} tree without XStream's {@link TreeMarshaller}.<br>
+ * The built-in value elements are written inline, all other elements are passed to their {@link IDataElementConverter}.<br>
+ * Shared elements are either written as relative XPath references (the same output as {@link ElementMarshaller}) or as numeric id references. In the id
+ * mode the root node gets marked by {@link #REFERENCES_ATTRIBUTE} and only shared elements get an {@link #ID_ATTRIBUTE} - no paths are tracked at all.<br>
+ * If enabled frequent type names and strings are replaced by the tokens of a {@link HeaderDictionary}.
+ * 
+ * @author M. Hautle
+ */
+class ElementWriter implements IElementMarshallingContext {
+    /** Name of the attribute holding a reference. (Same as used by {@link ReferenceByXPathMarshaller}) */
+    static final String REFERENCE_ATTRIBUTE = "reference";
+
+    /** Name of the attribute holding the id of a shared element. */
+    static final String ID_ATTRIBUTE = "id";
+
+    /** Name of the root attribute holding the reference mode. */
+    static final String REFERENCES_ATTRIBUTE = "references";
+
+    /** Value of {@link #REFERENCES_ATTRIBUTE} for id references. */
+    static final String ID_REFERENCES = "id";
+
+    /** Name of the root node of a sequence of entries (see {@link #writeEntries(List, DataHolder)}). */
+    static final String ENTRIES_NODE = "entries";
+
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /** The writer (path tracking in the xpath mode). */
+    private final HierarchicalStreamWriter writer;
+
+    /** Tracker holding the path of the current node (null in the id mode). */
+    private final PathTracker pathTracker;
+
+    /** The elements occurring more than once in the written tree (null in the xpath mode). */
+    @SuppressWarnings("rawtypes")
+    private final Map<IDataElement, Boolean> shared;
+
+    /** The ids of the already written shared elements (null in the xpath mode). */
+    @SuppressWarnings("rawtypes")
+    private final Map<IDataElement, String> ids;
+
+    /** Lookup for the converters of non {@link IDataElement} values. */
+    private final ConverterLookup converterLookup;
+
+    /** The paths of the already written elements. */
+    @SuppressWarnings("rawtypes")
+    private final Map<IDataElement, Path> references = new IdentityHashMap<IDataElement, Path>();
+
+    /** The elements written on the same node as their parent (they can't be referenced). */
+    @SuppressWarnings("rawtypes")
+    private final Map<IDataElement, Path> implicitElements = new IdentityHashMap<IDataElement, Path>();
+
+    /** The path of the last registered element. */
+    private Path lastPath;
+
+    /** The dictionary of the written file or null. */
+    private HeaderDictionary dictionary;
+
+    /** The dataholder. */
+    private DataHolder dataHolder;
+
+    /** The number of written elements (the monitor gets checked every {@link ElementMarshallingHelper#CANCEL_CHECK_INTERVAL} elements). */
+    private int writtenElements;
+
+    /**
+     * Default constructor.
+     * 
+     * @param adapter The owning adapter
+     * @param writer The writer to use
+     * @param idReferences True to write id references, false for relative xpath references
+     */
+    @SuppressWarnings("rawtypes")
+    public ElementWriter(XStreamAdapter adapter, HierarchicalStreamWriter writer, boolean idReferences) {
+        this.adapter = adapter;
+        converterLookup = adapter.getConverterLookup();
+        if (idReferences) {
+            this.writer = writer;
+            pathTracker = null;
+            shared = new IdentityHashMap<IDataElement, Boolean>();
+            ids = new IdentityHashMap<IDataElement, String>();
+        } else {
+            pathTracker = new PathTracker();
+            this.writer = new PathTrackingWriter(writer, pathTracker);
+            shared = null;
+            ids = null;
+        }
+    }
+
+    /**
+     * Writes the given root element.
+     * 
+     * @param root The root element
+     * @param dataHolder The data holder to use or null
+     */
+    @SuppressWarnings("rawtypes")
+    public void write(IDataElement root, DataHolder dataHolder) {
+        this.dataHolder = dataHolder;
+        if (root == null)
+            throw new IllegalArgumentException("Null model is not supported!");
+        writer.startNode(buildTypeName(root.getType(), this));
+        writeRootAttributes(writer, this);
+        final HeaderDictionary dict = HeaderDictionary.create(getDataHolder());
+        if (ids != null || dict != null)
+            scan(Collections.singletonList(root), dict);
+        if (ids != null) {
+            writer.addAttribute(REFERENCES_ATTRIBUTE, ID_REFERENCES);
+            // the id of a referenced root must be written before the dictionary node
+            registerId(root);
+        }
+        if (dict != null && dict.seal()) {
+            dict.write(writer);
+            dictionary = dict;
+            // the names of this file differ from the ones of the adapter
+            put(TypeNameCache.KEY, new TypeNameCache());
+        }
+        if (ids != null)
+            marshal(root);
+        else
+            convertAnother(root);
+        writer.endNode();
+        writer.flush();
+    }
+
+    /**
+     * Writes the given entries as children of an {@link #ENTRIES_NODE} root (used for the chunks of a {@link ChunkedContent}).<br>
+     * The entries must not reference elements outside of them.
+     * 
+     * @param entries The entries (may contain null values)
+     * @param dataHolder The data holder to use or null
+     */
+    @SuppressWarnings("rawtypes")
+    public void writeEntries(List<IDataElement> entries, DataHolder dataHolder) {
+        this.dataHolder = dataHolder;
+        writer.startNode(ENTRIES_NODE);
+        writeRootAttributes(writer, this);
+        if (ids != null) {
+            final List<IDataElement> roots = new ArrayList<IDataElement>(entries.size());
+            for (IDataElement e : entries)
+                if (e != null)
+                    roots.add(e);
+            scan(roots, null);
+            writer.addAttribute(REFERENCES_ATTRIBUTE, ID_REFERENCES);
+        }
+        for (IDataElement e : entries) {
+            if (e == null) {
+                writeNull(writer);
+                continue;
+            }
+            writer.startNode(buildTypeName(e.getType(), this));
+            convertAnother(e);
+            writer.endNode();
+        }
+        writer.endNode();
+        writer.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void convertAnother(Object item) {
+        if (item instanceof IDataElement)
+            writeElement((IDataElement) item, null);
+        else
+            converterLookup.lookupConverterForType(item.getClass()).marshal(item, writer, this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void convertAnother(Object item, Converter converter) {
+        if (item instanceof IDataElement)
+            writeElement((IDataElement) item, converter);
+        else
+            converter.marshal(item, writer, this);
+    }
+
+    /**
+     * Walks through the trees of the given elements.<br>
+     * Collects the elements occurring more than once into {@link #shared} (in the id mode) and counts the written elements in the given dictionary.
+     * 
+     * @param roots The root elements
+     * @param dict The dictionary or null
+     */
+    @SuppressWarnings("rawtypes")
+    private void scan(List<IDataElement> roots, HeaderDictionary dict) {
+        final Map<IDataElement, Boolean> seen = new IdentityHashMap<IDataElement, Boolean>();
+        final FastStack todo = new FastStack(16);
+        for (IDataElement root : roots)
+            todo.push(root);
+        while (todo.size() > 0) {
+            final IDataElement el = (IDataElement) todo.pop();
+            if (seen.put(el, Boolean.TRUE) != null) {
+                if (shared != null)
+                    shared.put(el, Boolean.TRUE);
+                continue;
+            }
+            if (dict != null)
+                dict.count(el);
+            // the entries of side-car contents are values or self-contained chunks - there's no need to load them
+            if (el instanceof IndexCollectionElement && ((IndexCollectionElement) el).getLazyContent() != null)
+                continue;
+            for (int i = 0, cnt = el.getChildCount(); i < cnt; i++) {
+                final IAttribute attr = el.getChild(i);
+                if (attr.getValue() != null)
+                    todo.push(attr.getValue());
+                if (attr instanceof MapAttribute && ((MapAttribute) attr).getKeyValue() != null)
+                    todo.push(((MapAttribute) attr).getKeyValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the given element or a reference to it if it was already written.
+     * 
+     * @param element The element
+     * @param converter The converter to use or null to use the registered one
+     */
+    @SuppressWarnings("rawtypes")
+    private void writeElement(IDataElement element, Converter converter) {
+        if (++writtenElements % ElementMarshallingHelper.CANCEL_CHECK_INTERVAL == 0)
+            ElementMarshallingHelper.checkCanceled(this);
+        final boolean reference = ids != null ? registerId(element) : registerPath(element);
+        if (reference)
+            return;
+        if (converter != null)
+            converter.marshal(element, writer, this);
+        else
+            marshal(element);
+    }
+
+    /**
+     * Registers the given element by it's id.<br>
+     * Writes a reference if the element was already written.
+     * 
+     * @param element The element
+     * @return True if a reference was written
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean registerId(IDataElement element) {
+        final String id = ids.get(element);
+        if (id != null) {
+            writer.addAttribute(REFERENCE_ATTRIBUTE, id);
+            return true;
+        }
+        // only shared elements need an id
+        if (shared.containsKey(element)) {
+            final String newId = String.valueOf(ids.size() + 1);
+            ids.put(element, newId);
+            writer.addAttribute(ID_ATTRIBUTE, newId);
+        }
+        return false;
+    }
+
+    /**
+     * Registers the given element by it's path.<br>
+     * Writes a relative xpath reference if the element was already written.
+     * 
+     * @param element The element
+     * @return True if a reference was written
+     */
+    @SuppressWarnings("rawtypes")
+    private boolean registerPath(IDataElement element) {
+        final Path path = pathTracker.getPath();
+        final Path existing = references.get(element);
+        if (existing != null) {
+            writer.addAttribute(REFERENCE_ATTRIBUTE, path.relativeTo(existing).toString());
+            return true;
+        }
+        if (implicitElements.containsKey(element))
+            throw new ReferencedImplicitElementException(element, path);
+        // an element on the node of it's parent can't be referenced
+        if (lastPath == null || !path.isAncestor(lastPath)) {
+            lastPath = path;
+            references.put(element, path);
+        } else {
+            implicitElements.put(element, path);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the content of the given element.
+     * 
+     * @param element The element
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void marshal(IDataElement element) {
+        final Class<? extends IDataElement> type = element.getClass();
+        // fast path for the built-in values
+        if (isBuiltinValue(type)) {
+            final Object value = ((IValueElement) element).getValue();
+            final String token = dictionary != null && value instanceof String ? dictionary.getStringToken((String) value) : null;
+            if (token != null) {
+                writer.addAttribute(HeaderDictionary.STRING_ATTRIBUTE, token);
+                return;
+            }
+            converterLookup.lookupConverterForType(value.getClass()).marshal(value, writer, this);
+            return;
+        }
+        getConverter(type).marshal(element, writer, this);
+    }
+
+    /**
+     * Returns the converter for the given element type.
+     * 
+     * @param type The element type
+     * @return The converter
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElementConverter getConverter(Class<? extends IDataElement> type) {
+        return adapter.getDispatcher().lookupConverterForType(type);
+    }
+
+    /**
+     * Returns wherever the given type is a built-in value element whose value is written by the XStream converter of the value type.
+     * 
+     * @param type The element type
+     * @return True if it's a built-in value element
+     */
+    @SuppressWarnings("rawtypes")
+    private static boolean isBuiltinValue(Class<? extends IDataElement> type) {
+        return type == PrimitiveValue.class || type == WrapperTypeValue.class || type == StringValue.class || type == StringBasedValue.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String aliasForType(String name) {
+        final String token = dictionary != null ? dictionary.getTypeToken(name) : null;
+        return token != null ? token : adapter.aliasForType(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IProgressMonitor getProgressMonitor() {
+        return ElementMarshallingHelper.getProgressMonitor(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object key) {
+        return getDataHolder().get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(Object key, Object value) {
+        getDataHolder().put(key, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Iterator keys() {
+        return getDataHolder().keys();
+    }
+
+    /**
+     * Returns the data holder. It will be created if it does not yet exist.
+     * 
+     * @return The data holder
+     */
+    private DataHolder getDataHolder() {
+        if (dataHolder == null)
+            dataHolder = new MapBackedDataHolder();
+        return dataHolder;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.util.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.converters.*;
+import com.thoughtworks.xstream.io.*;
+
+/**
+ * Per file dictionary of frequent type names and repeated string values written once in the header of a file (direct codec only).<br>
+ * The root node gets marked by {@link #DICTIONARY_ATTRIBUTE}, it's first child holds the entries. In the body the type names are replaced by the tokens
+ * {@link #TYPE_PREFIX}<i>index</i> (which are no valid java names) and the values of string nodes by a {@link #STRING_ATTRIBUTE} holding the index of the
+ * string.
+ * 
+ * @author M. Hautle
+ */
+class HeaderDictionary {
+    /** Key of the {@link DataHolder} flag enabling the type dictionary. */
+    static final String TYPES_KEY = "typeDictionary";
+
+    /** Key of the {@link DataHolder} flag enabling the string table. */
+    static final String STRINGS_KEY = "stringTable";
+
+    /** Name of the root attribute marking files with a dictionary header. */
+    private static final String DICTIONARY_ATTRIBUTE = "dictionary";
+
+    /** Value of {@link #DICTIONARY_ATTRIBUTE}. */
+    private static final String DICTIONARY_HEADER = "header";
+
+    /** Name of the header node ('-' can't occur in java names, so it can't clash with the content). */
+    private static final String HEADER_NODE = "jtde-dictionary";
+
+    /** Name of the header entry nodes holding a type name. */
+    private static final String TYPE_NODE = "type";
+
+    /** Name of the header entry nodes holding a string. */
+    private static final String STRING_NODE = "string";
+
+    /** Name of the attribute referencing a string of the table. */
+    static final String STRING_ATTRIBUTE = "string";
+
+    /** Prefix of the type tokens. */
+    private static final String TYPE_PREFIX = "t.";
+
+    /** The minimal number of occurrences of a entry. */
+    private static final int MIN_OCCURRENCES = 2;
+
+    /** The minimal length of a string in the table. */
+    private static final int MIN_STRING_LENGTH = 8;
+
+    /** The occurrences of the type names (null if no types are collected). */
+    private final Map<String, int[]> typeCounts;
+
+    /** The occurrences of the strings (null if no strings are collected). */
+    private final Map<String, int[]> stringCounts;
+
+    /** The tokens of the type names in the dictionary. */
+    private final Map<String, String> typeTokens = new HashMap<String, String>();
+
+    /** The tokens of the strings in the dictionary. */
+    private final Map<String, String> stringTokens = new HashMap<String, String>();
+
+    /** The type names in the dictionary (index = token number). */
+    private final List<String> types = new ArrayList<String>();
+
+    /** The strings in the dictionary (index = token). */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Default constructor.
+     * 
+     * @param collectTypes True if type names should be collected
+     * @param collectStrings True if strings should be collected
+     */
+    private HeaderDictionary(boolean collectTypes, boolean collectStrings) {
+        // linked to get the entries in order of their first occurrence
+        typeCounts = collectTypes ? new LinkedHashMap<String, int[]>() : null;
+        stringCounts = collectStrings ? new LinkedHashMap<String, int[]>() : null;
+    }
+
+    /**
+     * Creates a dictionary for writing if enabled by the given options.
+     * 
+     * @param options The options
+     * @return The dictionary or null if disabled
+     */
+    static HeaderDictionary create(DataHolder options) {
+        final boolean collectTypes = Boolean.TRUE.equals(options.get(TYPES_KEY));
+        final boolean collectStrings = Boolean.TRUE.equals(options.get(STRINGS_KEY));
+        return collectTypes || collectStrings ? new HeaderDictionary(collectTypes, collectStrings) : null;
+    }
+
+    /**
+     * Counts the type name and the value of the given element.<br>
+     * Call this method once for each written element.
+     * 
+     * @param element The element
+     */
+    @SuppressWarnings("rawtypes")
+    void count(IDataElement element) {
+        if (typeCounts != null)
+            increment(typeCounts, element.getType().getName());
+        if (stringCounts == null)
+            return;
+        // only these values are written by the fast path of the direct codec
+        final Class<?> type = element.getClass();
+        if (type != StringValue.class && type != StringBasedValue.class)
+            return;
+        final String value = ((StringValue) element).getValue();
+        if (value != null && value.length() >= MIN_STRING_LENGTH)
+            increment(stringCounts, value);
+    }
+
+    /**
+     * Increments the counter of the given key.
+     * 
+     * @param counts The counters
+     * @param key The key
+     */
+    private static void increment(Map<String, int[]> counts, String key) {
+        final int[] cnt = counts.get(key);
+        if (cnt == null)
+            counts.put(key, new int[] { 1 });
+        else
+            cnt[0]++;
+    }
+
+    /**
+     * Selects the entries of the dictionary from the counted occurrences.
+     * 
+     * @return True if the dictionary is not empty
+     */
+    boolean seal() {
+        if (typeCounts != null) {
+            for (Map.Entry<String, int[]> e : typeCounts.entrySet()) {
+                final String token = TYPE_PREFIX + types.size();
+                if (e.getValue()[0] < MIN_OCCURRENCES || e.getKey().length() <= token.length())
+                    continue;
+                typeTokens.put(e.getKey(), token);
+                types.add(e.getKey());
+            }
+        }
+        if (stringCounts != null) {
+            for (Map.Entry<String, int[]> e : stringCounts.entrySet()) {
+                if (e.getValue()[0] < MIN_OCCURRENCES)
+                    continue;
+                stringTokens.put(e.getKey(), String.valueOf(strings.size()));
+                strings.add(e.getKey());
+            }
+        }
+        return !types.isEmpty() || !strings.isEmpty();
+    }
+
+    /**
+     * Writes the dictionary.<br>
+     * The writer must be positioned on the root node, before it's first child.
+     * 
+     * @param writer The writer
+     */
+    void write(HierarchicalStreamWriter writer) {
+        writer.addAttribute(DICTIONARY_ATTRIBUTE, DICTIONARY_HEADER);
+        writer.startNode(HEADER_NODE);
+        for (String name : types) {
+            writer.startNode(TYPE_NODE);
+            writer.setValue(name);
+            writer.endNode();
+        }
+        for (String str : strings) {
+            writer.startNode(STRING_NODE);
+            writer.setValue(str);
+            writer.endNode();
+        }
+        writer.endNode();
+    }
+
+    /**
+     * Returns wherever the document of the given reader has a dictionary header.<br>
+     * The reader must be positioned on the root node.
+     * 
+     * @param reader The reader
+     * @return True if the document has a dictionary
+     */
+    static boolean isPresent(HierarchicalStreamReader reader) {
+        return DICTIONARY_HEADER.equals(reader.getAttribute(DICTIONARY_ATTRIBUTE));
+    }
+
+    /**
+     * Reads the dictionary.<br>
+     * The reader must be positioned on the root node, before it's first child.
+     * 
+     * @param reader The reader
+     * @return The dictionary
+     */
+    static HeaderDictionary read(HierarchicalStreamReader reader) {
+        final HeaderDictionary dict = new HeaderDictionary(false, false);
+        reader.moveDown();
+        if (!HEADER_NODE.equals(reader.getNodeName()))
+            throw new ConversionException("Missing dictionary header!");
+        while (reader.hasMoreChildren()) {
+            reader.moveDown();
+            final String name = reader.getNodeName();
+            if (TYPE_NODE.equals(name))
+                dict.types.add(reader.getValue());
+            else if (STRING_NODE.equals(name))
+                dict.strings.add(reader.getValue());
+            reader.moveUp();
+        }
+        reader.moveUp();
+        return dict;
+    }
+
+    /**
+     * Returns the type names in the dictionary.
+     * 
+     * @return The fully qualified type names
+     */
+    List<String> getTypes() {
+        return types;
+    }
+
+    /**
+     * Returns the token for the given type name.
+     * 
+     * @param name The fully qualified type name
+     * @return The token or null if the type is not in the dictionary
+     */
+    String getTypeToken(String name) {
+        return typeTokens.get(name);
+    }
+
+    /**
+     * Returns the type name for the given token.
+     * 
+     * @param token A token or any other name
+     * @return The type name or null if the passed value is no type token
+     */
+    String getType(String token) {
+        if (!token.startsWith(TYPE_PREFIX))
+            return null;
+        try {
+            final int index = Integer.parseInt(token.substring(TYPE_PREFIX.length()));
+            return index >= 0 && index < types.size() ? types.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the token for the given string.
+     * 
+     * @param value The string
+     * @return The token or null if the string is not in the table
+     */
+    String getStringToken(String value) {
+        return stringTokens.get(value);
+    }
+
+    /**
+     * Returns the string for the given token.
+     * 
+     * @param token The token
+     * @return The string
+     */
+    String getString(String token) {
+        try {
+            return strings.get(Integer.parseInt(token));
+        } catch (NumberFormatException e) {
+            throw new ConversionException("Invalid string token " + token, e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new ConversionException("Unknown string token " + token, e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import ch.jtde.model.*;
+
+/**
+ * Listener notified about the read children of the root element while a file gets read.<br>
+ * See {@link XStreamAdapter#read(java.io.InputStream, java.io.File, IReadListener, org.eclipse.core.runtime.IProgressMonitor)}.
+ * 
+ * @author M. Hautle
+ */
+public interface IReadListener {
+    /**
+     * Method called from the reading thread after a page of children of the root element was read.<br>
+     * The reader won't touch the given number of leading children anymore, so they may be handed out while the rest of the file gets read.
+     * 
+     * @param root The root element
+     * @param count The number of completely read children
+     */
+    void childrenRead(IDataElement<IAttribute> root, int count);
+}
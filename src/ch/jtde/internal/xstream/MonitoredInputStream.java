@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import org.eclipse.core.runtime.*;
+
+/**
+ * {@link InputStream} reporting the read bytes to a {@link IProgressMonitor} (in units of {@link XStreamAdapter#WORK_UNIT} bytes).<br>
+ * A {@link OperationCanceledException} gets thrown as soon as the monitor was canceled. Marks are not supported, since re-read bytes would be reported
+ * twice.
+ * 
+ * @author M. Hautle
+ */
+class MonitoredInputStream extends FilterInputStream {
+    /** The monitor. */
+    private final IProgressMonitor pm;
+
+    /** The number of read bytes which were not yet reported. */
+    private int pending;
+
+    /**
+     * Default constructor.
+     * 
+     * @param in The stream to read
+     * @param pm The monitor
+     */
+    MonitoredInputStream(InputStream in, IProgressMonitor pm) {
+        super(in);
+        this.pm = pm;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        checkCanceled();
+        final int b = super.read();
+        if (b >= 0)
+            worked(1);
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkCanceled();
+        final int cnt = super.read(b, off, len);
+        if (cnt > 0)
+            worked(cnt);
+        return cnt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        checkCanceled();
+        final long cnt = super.skip(n);
+        if (cnt > 0)
+            worked((int) cnt);
+        return cnt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark not supported");
+    }
+
+    /**
+     * Reports the given number of read bytes.
+     * 
+     * @param cnt The number of bytes
+     */
+    private void worked(int cnt) {
+        pending += cnt;
+        if (pending < XStreamAdapter.WORK_UNIT)
+            return;
+        pm.worked(pending / XStreamAdapter.WORK_UNIT);
+        pending %= XStreamAdapter.WORK_UNIT;
+    }
+
+    /**
+     * Throws a {@link OperationCanceledException} if the monitor was canceled.
+     */
+    private void checkCanceled() {
+        if (pm.isCanceled())
+            throw new OperationCanceledException();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import org.eclipse.core.runtime.*;
+
+/**
+ * {@link OutputStream} reporting the written bytes to a {@link IProgressMonitor} (in units of {@link XStreamAdapter#WORK_UNIT} bytes).<br>
+ * A {@link OperationCanceledException} gets thrown as soon as the monitor was canceled.
+ * 
+ * @author M. Hautle
+ */
+class MonitoredOutputStream extends FilterOutputStream {
+    /** The monitor. */
+    private final IProgressMonitor pm;
+
+    /** The number of written bytes which were not yet reported. */
+    private int pending;
+
+    /**
+     * Default constructor.
+     * 
+     * @param out The stream to write
+     * @param pm The monitor
+     */
+    MonitoredOutputStream(OutputStream out, IProgressMonitor pm) {
+        super(out);
+        this.pm = pm;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException {
+        checkCanceled();
+        out.write(b);
+        worked(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkCanceled();
+        out.write(b, off, len);
+        worked(len);
+    }
+
+    /**
+     * Reports the given number of written bytes.
+     * 
+     * @param cnt The number of bytes
+     */
+    private void worked(int cnt) {
+        pending += cnt;
+        if (pending < XStreamAdapter.WORK_UNIT)
+            return;
+        pm.worked(pending / XStreamAdapter.WORK_UNIT);
+        pending %= XStreamAdapter.WORK_UNIT;
+    }
+
+    /**
+     * Throws a {@link OperationCanceledException} if the monitor was canceled.
+     */
+    private void checkCanceled() {
+        if (pm.isCanceled())
+            throw new OperationCanceledException();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import org.eclipse.jdt.core.*;
+import ch.jtde.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.core.util.*;
+
+/**
+ * Cache of binary snapshots of read models (see {@link XStreamAdapter#read(InputStream, File)}).<br>
+ * A snapshot is the image of a model written by the direct codec in the binary token format. It's keyed by a hash of the project name and the file content
+ * and holds the stamps of the types used by the model (see {@link TypeMetadataCache#getStamp(IType)}) - it's only used as long as none of these types
+ * changed.<br>
+ * The snapshots are stored in the state location of the plugin, the least recently used ones are evicted if the cache exceeds it's maximal size.
+ * 
+ * @author M. Hautle
+ */
+public final class SnapshotCache {
+    /** Suffix of the snapshot files. */
+    private static final String SUFFIX = ".snapshot";
+
+    /** Suffix of the temporary file used while writing a snapshot. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Version of the snapshot format. */
+    private static final int VERSION = 1;
+
+    /** Hex digits of the keys. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The directory holding the snapshots. */
+    private File dir;
+
+    /** Stamp of the configuration the snapshots were written with. */
+    private int configuration;
+
+    /**
+     * Sets the directory of the snapshots.
+     * 
+     * @param dir The directory holding the snapshots
+     * @param configuration Stamp of the configuration (see {@link TypeMetadataCache#initialize(File, int)}) - snapshots written with another stamp are
+     *            ignored
+     */
+    public void initialize(File dir, int configuration) {
+        this.dir = dir;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the key of the given file content.<br>
+     * The content gets streamed through the digest, so it's never held in memory.
+     * 
+     * @param project The project owning the file
+     * @param content The content of the file (gets read to the end, but not closed)
+     * @return The key
+     * @throws IOException If the content could not be read
+     */
+    public static String getKey(IJavaProject project, InputStream content) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(project.getElementName().getBytes("UTF-8"));
+            final byte[] buf = new byte[8192];
+            for (int cnt; (cnt = content.read(buf)) != -1;)
+                digest.update(buf, 0, cnt);
+            final byte[] hash = digest.digest();
+            final char[] res = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                res[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+                res[2 * i + 1] = HEX[hash[i] & 0xf];
+            }
+            return new String(res);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
+
+    /**
+     * Opens the given snapshot.<br>
+     * The snapshot gets marked as recently used.
+     * 
+     * @param key The key of the snapshot
+     * @param project The project owning the file
+     * @return A stream positioned at the begin of the image or null if there is no valid snapshot
+     */
+    InputStream open(String key, IJavaProject project) {
+        final File file = getFile(key);
+        if (dir == null || !file.isFile())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (!isValid(in, project)) {
+                in.close();
+                file.delete();
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            final InputStream res = in;
+            in = null;
+            return res;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (JavaModelException e) {
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Checks the header of a snapshot.
+     * 
+     * @param in The stream positioned at the begin of the snapshot
+     * @param project The project owning the file
+     * @return True if the snapshot was written with the current configuration and none of it's types changed
+     * @throws IOException If something went wrong
+     * @throws JavaModelException If something went wrong
+     */
+    private boolean isValid(DataInputStream in, IJavaProject project) throws IOException, JavaModelException {
+        if (in.readInt() != VERSION || in.readInt() != configuration || in.readInt() != TypeMetadataCache.getClasspathStamp(project))
+            return false;
+        final TypeCache types = Activator.getTypeCache();
+        for (int i = 0, cnt = in.readInt(); i < cnt; i++) {
+            final IType type = types.findType(project, in.readUTF());
+            final long stamp = in.readLong();
+            if (type == null || TypeMetadataCache.getStamp(type) != stamp)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores a snapshot.<br>
+     * Nothing gets stored if one of the types used by the model has unsaved changes or if the image exceeds the maximal size.
+     * 
+     * @param key The key of the snapshot
+     * @param project The project owning the file
+     * @param root The root element of the model
+     * @param image The image of the model
+     * @param maxSize The maximal size of the cache in bytes
+     */
+    @SuppressWarnings("rawtypes")
+    void store(String key, IJavaProject project, IDataElement root, byte[] image, long maxSize) {
+        if (dir == null || image.length > maxSize)
+            return;
+        final File file = getFile(key);
+        final File tmp = new File(file.getPath() + TMP_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            final Collection<IType> types = getTypes(root);
+            final List<Long> stamps = new ArrayList<Long>(types.size());
+            for (IType t : types) {
+                final long stamp = TypeMetadataCache.getStamp(t);
+                if (stamp == TypeMetadataCache.NO_STAMP)
+                    return;
+                stamps.add(Long.valueOf(stamp));
+            }
+            evict(maxSize - image.length);
+            dir.mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            out.writeInt(configuration);
+            out.writeInt(TypeMetadataCache.getClasspathStamp(project));
+            out.writeInt(types.size());
+            final Iterator<Long> stamp = stamps.iterator();
+            for (IType t : types) {
+                out.writeUTF(t.getFullyQualifiedName());
+                out.writeLong(stamp.next().longValue());
+            }
+            out.write(image);
+            out.close();
+            out = null;
+            file.delete();
+            if (!tmp.renameTo(file))
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (JavaModelException e) {
+            // not cacheable
+        } finally {
+            close(out);
+            if (tmp.exists())
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Removes the given snapshot (f.e. because it could not be read).
+     * 
+     * @param key The key of the snapshot
+     */
+    void remove(String key) {
+        if (dir != null)
+            getFile(key).delete();
+    }
+
+    /**
+     * Removes the least recently used snapshots until the cache size does not exceed the given size.
+     * 
+     * @param size The maximal size in bytes
+     */
+    private void evict(long size) {
+        final File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null)
+            return;
+        long total = 0;
+        for (File f : files)
+            total += f.length();
+        if (total <= size)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final long m1 = o1.lastModified(), m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > size; i++) {
+            final long len = files[i].length();
+            if (files[i].delete())
+                total -= len;
+        }
+    }
+
+    /**
+     * Returns the file of the given snapshot.
+     * 
+     * @param key The key
+     * @return The file
+     */
+    private File getFile(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+
+    /**
+     * Returns the types of all elements in the given tree.
+     * 
+     * @param root The root element
+     * @return The types
+     */
+    @SuppressWarnings("rawtypes")
+    private static Collection<IType> getTypes(IDataElement root) {
+        final Set<IType> res = new LinkedHashSet<IType>();
+        final Map<IDataElement, Boolean> seen = new IdentityHashMap<IDataElement, Boolean>();
+        final FastStack todo = new FastStack(16);
+        todo.push(root);
+        while (todo.size() > 0) {
+            final IDataElement el = (IDataElement) todo.pop();
+            if (seen.put(el, Boolean.TRUE) != null)
+                continue;
+            final IType type = el.getType().getType();
+            if (type != null)
+                res.add(type);
+            for (int i = 0, cnt = el.getChildCount(); i < cnt; i++) {
+                final IAttribute attr = el.getChild(i);
+                if (attr.getValue() != null)
+                    todo.push(attr.getValue());
+                if (attr instanceof MapAttribute && ((MapAttribute) attr).getKeyValue() != null)
+                    todo.push(((MapAttribute) attr).getKeyValue());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Closes the given stream.
+     * 
+     * @param stream The stream or null
+     */
+    private static void close(Closeable stream) {
+        if (stream != null)
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+    }
+}
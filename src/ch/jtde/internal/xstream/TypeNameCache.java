@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.util.*;
+import java.util.concurrent.*;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.converters.*;
+
+/**
+ * Cache of the type specifications used as node names - from {@link ClassDefinition} to node name and from node name to the parsed {@link TypeSpec}.<br>
+ * The names depend on the aliases of the (un)marshalling context, so a cache is scoped to an adapter (or to a single file if the file has it's own
+ * aliases, see {@link HeaderDictionary}). It gets passed through the {@link DataHolder} under {@link #KEY}.
+ * 
+ * @author M. Hautle
+ */
+final class TypeNameCache {
+    /** Key of the cache in the {@link DataHolder}. */
+    static final String KEY = "typeNameCache";
+
+    /** The node names by type. */
+    private final Map<ClassDefinition, String> names = new ConcurrentHashMap<ClassDefinition, String>();
+
+    /** The parsed type specifications by node name. */
+    private final Map<String, TypeSpec> specs = new ConcurrentHashMap<String, TypeSpec>();
+
+    /**
+     * Returns the cache of the given context.
+     * 
+     * @param context The context
+     * @return The cache or null
+     */
+    static TypeNameCache get(DataHolder context) {
+        return (TypeNameCache) context.get(KEY);
+    }
+
+    /**
+     * Returns the node name of the given type.
+     * 
+     * @param type The type
+     * @return The name or null if not yet cached
+     */
+    String getName(ClassDefinition type) {
+        return names.get(type);
+    }
+
+    /**
+     * Caches the node name of the given type.
+     * 
+     * @param type The type
+     * @param name The node name
+     */
+    void putName(ClassDefinition type, String name) {
+        names.put(type, name);
+    }
+
+    /**
+     * Returns the parsed specification of the given node name.
+     * 
+     * @param name The node name
+     * @return The specification or null if not yet cached
+     */
+    TypeSpec getSpec(String name) {
+        return specs.get(name);
+    }
+
+    /**
+     * Caches the parsed specification of the given node name.
+     * 
+     * @param name The node name
+     * @param spec The specification
+     */
+    void putSpec(String name, TypeSpec spec) {
+        specs.put(name, spec);
+    }
+
+    /**
+     * Parsed type specification of a node name.<br>
+     * The type itself gets looked up through {@link ch.jtde.xstream.IElementUnmarshallingContext#findType(String)} which has it's own (JDT delta aware)
+     * cache.
+     * 
+     * @author M. Hautle
+     */
+    static final class TypeSpec {
+        /** The fully qualified name of the (element) type. */
+        final String name;
+
+        /** True if this is a primitive array. */
+        final boolean primitive;
+
+        /** The number of array dimensions (0 for normal types). */
+        final int dimensions;
+
+        /**
+         * Default constructor.
+         * 
+         * @param name The fully qualified name of the (element) type
+         * @param primitive True if this is a primitive array
+         * @param dimensions The number of array dimensions (0 for normal types)
+         */
+        TypeSpec(String name, boolean primitive, int dimensions) {
+            this.name = name;
+            this.primitive = primitive;
+            this.dimensions = dimensions;
+        }
+    }
+}
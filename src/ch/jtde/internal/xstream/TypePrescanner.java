@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream;
+
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import ch.jtde.internal.xstream.converter.*;
+import com.thoughtworks.xstream.io.*;
+
+/**
+ * Quick pass over a document collecting the names of all types it references (node names and the class attributes of
+ * {@link DataElementConverter}).<br>
+ * Aliases, dictionary tokens and array suffixes get resolved, so the result holds fully qualified names which can be resolved in one batch before the
+ * real unmarshalling pass.
+ * 
+ * @author M. Hautle
+ */
+class TypePrescanner {
+    /** Name of the attribute holding the concrete type of a field (see {@link DataElementConverter}). */
+    private static final String CLASS_ATTRIBUTE = "class";
+
+    /** The owning adapter. */
+    private final XStreamAdapter adapter;
+
+    /** The collected names. */
+    private final Set<String> names = new HashSet<String>();
+
+    /** The dictionary of the document or null. */
+    private HeaderDictionary dictionary;
+
+    /**
+     * Default constructor.
+     * 
+     * @param adapter The owning adapter
+     */
+    TypePrescanner(XStreamAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * Collects the type names of the given document.<br>
+     * The reader must be positioned on the root node, it gets consumed by this call.
+     * 
+     * @param reader The reader
+     * @param pm The monitor of the operation
+     * @return The fully qualified names of the referenced types
+     * @throws OperationCanceledException If the monitor was canceled
+     */
+    Set<String> scan(HierarchicalStreamReader reader, IProgressMonitor pm) {
+        visit(reader);
+        if (HeaderDictionary.isPresent(reader)) {
+            dictionary = HeaderDictionary.read(reader);
+            names.addAll(dictionary.getTypes());
+        }
+        // iterative, deep structures (f.e. linked lists) would overflow the stack otherwise
+        int depth = 0;
+        while (true) {
+            if (reader.hasMoreChildren()) {
+                if (pm.isCanceled())
+                    throw new OperationCanceledException();
+                reader.moveDown();
+                depth++;
+                visit(reader);
+            } else if (depth > 0) {
+                reader.moveUp();
+                depth--;
+            } else {
+                break;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Collects the type names of the current node.
+     * 
+     * @param reader The reader
+     */
+    private void visit(HierarchicalStreamReader reader) {
+        add(reader.getNodeName());
+        add(reader.getAttribute(CLASS_ATTRIBUTE));
+    }
+
+    /**
+     * Adds the given name if it's a type name.
+     * 
+     * @param name A node name or type specification (may be null)
+     */
+    private void add(String name) {
+        if (name == null)
+            return;
+        name = ElementMarshallingHelper.getElementTypeName(name);
+        final String type = dictionary != null ? dictionary.getType(name) : null;
+        name = type != null ? type : adapter.typeForAlias(name);
+        // field names, primitives and the special nodes contain no dot (types of the default package are resolved on demand)
+        if (name.indexOf('.') > 0)
+            names.add(name);
+    }
+}
@@ -10,7 +10,12 @@ package ch.jtde.internal.xstream;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.*;
+import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
+import ch.jtde.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.internal.preferences.*;
 import ch.jtde.internal.utils.*;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
@@ -18,6 +23,7 @@ import com.thoughtworks.xstream.*;
 import com.thoughtworks.xstream.converters.*;
 import com.thoughtworks.xstream.core.*;
 import com.thoughtworks.xstream.io.*;
+import com.thoughtworks.xstream.io.binary.*;
 import com.thoughtworks.xstream.io.xml.*;
 import com.thoughtworks.xstream.mapper.*;
 
@@ -28,18 +34,84 @@ import com.thoughtworks.xstream.mapper.*;
  * @author M. Hautle
  */
 public class XStreamAdapter {
+    /** The encoding used for writing. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The XML declaration written at the begin of each file. */
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>\n";
+
+    /** The size of the write buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Suffix of the temporary file used while saving. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Suffix of the side-car file holding the large arrays (appended to the name of the data file). */
+    private static final String BLOB_SUFFIX = ".blobs";
+
+    /** The number of bytes per unit of work reported to the progress monitors. */
+    static final int WORK_UNIT = 1024;
+
     /** Mapping from fully qualified type name to alias. */
     final Map<String, String> typeToAlias = new HashMap<String, String>();
 
     /** Mapping alias to fully qualified type name. */
     final Map<String, String> aliasToType = new HashMap<String, String>();
 
+    /** The converter for the {@link IDataElement}s. */
+    private final DispatchingConverter dispatcher = new DispatchingConverter();
+
+    /** The cache of the type names used as node names. */
+    private final TypeNameCache typeNames = new TypeNameCache();
+
     /** The {@link XStream}. */
     private Stream stream;
 
     /** The concerned project. */
     private final IJavaProject project;
 
+    /** The driver used for reading. */
+    private final HierarchicalStreamDriver readDriver;
+
+    /** Flag indicating if the output should be written without indentation. */
+    private final boolean compact;
+
+    /** Flag indicating if the direct codec ({@link ElementWriter}/{@link ElementReader}) should be used. */
+    private final boolean direct;
+
+    /** Flag indicating if the direct codec should write id instead of xpath references. */
+    private final boolean idReferences;
+
+    /** Flag indicating if primitive attributes holding their default value should be omitted. */
+    private final boolean omitDefaults;
+
+    /** The encoding of primitive arrays. */
+    private final ArrayEncoding arrayEncoding;
+
+    /** Flag indicating if the files should be gzip compressed. */
+    private final boolean compress;
+
+    /** The minimal length of byte/char arrays stored in the side-car file (0 to disable). */
+    private final int blobThreshold;
+
+    /** The minimal number of entries of collections stored in chunks in the side-car file (0 to disable). */
+    private final int chunkThreshold;
+
+    /** Flag indicating if the direct codec should write a dictionary of the frequent type names. */
+    private final boolean typeDictionary;
+
+    /** Flag indicating if the direct codec should write a table of the repeated strings. */
+    private final boolean stringTable;
+
+    /** Flag indicating if the types of a file should be resolved in one batch before it gets unmarshalled. */
+    private final boolean prescan;
+
+    /** The maximal size of the {@link SnapshotCache} in bytes (0 if disabled). */
+    private final long snapshotCacheSize;
+
+    /** The element depth from which structures get only read when they are accessed (0 to read everything at once). */
+    private final int lazyDepth;
+
     /**
      * Default constructor.
      * 
@@ -48,10 +120,41 @@ public class XStreamAdapter {
     public XStreamAdapter(IJavaProject proj) {
         project = proj;
         stream = new Stream();
+        // a pull parser keeps only the current path in memory - a DOM holds the whole document
+        readDriver = IOPreferences.isStreamingReader(proj) ? new StaxDriver() : new DomDriver();
+        compact = IOPreferences.isCompactWriter(proj);
+        direct = IOPreferences.isDirectCodec(proj);
+        idReferences = IOPreferences.isIdReferences(proj);
+        omitDefaults = IOPreferences.isOmitDefaults(proj);
+        arrayEncoding = getArrayEncoding(proj);
+        compress = IOPreferences.isCompress(proj);
+        blobThreshold = IOPreferences.getBlobThreshold(proj);
+        chunkThreshold = IOPreferences.getChunkThreshold(proj);
+        typeDictionary = IOPreferences.isTypeDictionary(proj);
+        stringTable = IOPreferences.isStringTable(proj);
+        prescan = IOPreferences.isPrescan(proj);
+        snapshotCacheSize = IOPreferences.getSnapshotCacheSize(proj) * 1024L * 1024L;
+        lazyDepth = IOPreferences.getLazyDepth(proj);
     }
 
     /**
-     * Writes out the given {@link IDataElement} into the passed file.
+     * Returns the configured encoding for primitive arrays.
+     * 
+     * @param proj The project
+     * @return The encoding
+     */
+    private static ArrayEncoding getArrayEncoding(IJavaProject proj) {
+        final String name = IOPreferences.getArrayEncoding(proj);
+        try {
+            return name != null ? ArrayEncoding.valueOf(name) : ArrayEncoding.ELEMENTS;
+        } catch (IllegalArgumentException e) {
+            return ArrayEncoding.ELEMENTS;
+        }
+    }
+
+    /**
+     * Writes out the given {@link IDataElement} into the passed file.<br>
+     * The format of an existing file is kept, new files are written in the format matching their extension (see {@link DataFormat#forFile(File)}).
      * 
      * @param el The element
      * @param file The destination file
@@ -59,10 +162,100 @@ public class XStreamAdapter {
      */
     @SuppressWarnings("rawtypes")
     public void write(IDataElement el, File file) throws IOException {
-        FileOutputStream out = null;
+        write(el, file, DataFormat.forFile(file), null);
+    }
+
+    /**
+     * Writes out the given {@link IDataElement} into the passed file (see {@link #write(IDataElement, File, DataFormat, IProgressMonitor)}).
+     * 
+     * @param el The element
+     * @param file The destination file
+     * @param pm The monitor to report the progress to or null
+     * @throws IOException If something went wrong
+     * @throws OperationCanceledException If the monitor was canceled (the destination is left untouched)
+     */
+    @SuppressWarnings("rawtypes")
+    public void write(IDataElement el, File file, IProgressMonitor pm) throws IOException {
+        write(el, file, DataFormat.forFile(file), pm);
+    }
+
+    /**
+     * Writes out the given {@link IDataElement} into the passed file using the given format (see
+     * {@link #write(IDataElement, File, DataFormat, IProgressMonitor)}).
+     * 
+     * @param el The element
+     * @param file The destination file
+     * @param format The format to use
+     * @throws IOException If something went wrong
+     */
+    @SuppressWarnings("rawtypes")
+    public void write(IDataElement el, File file, DataFormat format) throws IOException {
+        write(el, file, format, null);
+    }
+
+    /**
+     * Writes out the given {@link IDataElement} into the passed file using the given format.<br>
+     * The content gets first written into a temporary file next to the destination which replaces the destination only on success - so a failed save
+     * leaves the original file untouched.<br>
+     * If enabled large byte/char arrays and large collections (in chunks, see {@link ChunkedContent}) are written into a side-car file next to the
+     * destination (see {@link #getBlobFile(File)}). The previous side-car file is kept aside until the data file was replaced (and restored if that
+     * failed), a side-car file which is no longer needed gets removed.<br>
+     * The written bytes are reported to the given monitor, the size of the existing destination is used as estimate of the total work.
+     * 
+     * @param el The element
+     * @param file The destination file
+     * @param format The format to use
+     * @param pm The monitor to report the progress to or null
+     * @throws IOException If something went wrong
+     * @throws OperationCanceledException If the monitor was canceled (the destination is left untouched)
+     */
+    @SuppressWarnings("rawtypes")
+    public void write(IDataElement el, File file, DataFormat format, IProgressMonitor pm) throws IOException {
+        if (pm == null)
+            pm = new NullProgressMonitor();
+        beginTask(pm, "Writing " + file.getName(), file.isFile() ? file.length() : -1);
+        final File dir = file.getAbsoluteFile().getParentFile();
+        final File blobFile = getBlobFile(file);
+        final File tmp = File.createTempFile(file.getName(), TMP_SUFFIX, dir);
+        final File blobTmp = blobThreshold > 0 || chunkThreshold > 0 ? File.createTempFile(blobFile.getName(), TMP_SUFFIX, dir) : null;
+        OutputStream out = null;
+        BlobWriter blobs = null;
         try {
-            out = new FileOutputStream(file);
-            stream.toXML(el, out);
+            if (blobTmp != null)
+                blobs = new BlobWriter(blobTmp, blobThreshold, chunkThreshold, this, el);
+            out = new BufferedOutputStream(new MonitoredOutputStream(new FileOutputStream(tmp), pm), BUFFER_SIZE);
+            // existing compressed files stay compressed
+            if (compress || DataFormat.isCompressed(file))
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            final HierarchicalStreamWriter writer = createWriter(out, format);
+            marshal(el, writer, blobs, pm);
+            writer.close();
+            out = null;
+            if (blobs != null)
+                blobs.close();
+            final boolean sideCar = blobs != null && !blobs.isEmpty();
+            // the previous side-car file gets restored if the data file could not be replaced
+            final File previousBlobs = sideCar && blobFile.exists() ? moveAside(blobFile) : null;
+            try {
+                if (sideCar)
+                    replace(blobTmp, blobFile);
+                replace(tmp, file);
+            } catch (IOException e) {
+                if (previousBlobs != null) {
+                    blobFile.delete();
+                    previousBlobs.renameTo(blobFile);
+                }
+                throw e;
+            }
+            if (previousBlobs != null)
+                previousBlobs.delete();
+            if (sideCar)
+                blobs.commit(blobFile);
+            // a side-car file of a previous version is no longer referenced
+            if (!sideCar && blobFile.exists())
+                blobFile.delete();
+        } catch (RuntimeException e) {
+            throw canceled(e, pm);
         } finally {
             if (out != null)
                 try {
@@ -70,29 +263,560 @@ public class XStreamAdapter {
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+            if (blobs != null)
+                try {
+                    blobs.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            if (tmp.exists())
+                tmp.delete();
+            if (blobTmp != null && blobTmp.exists())
+                blobTmp.delete();
+            pm.done();
         }
     }
 
+    /**
+     * Returns the side-car file holding the large arrays and collections of the given data file.
+     * 
+     * @param file The data file
+     * @return The side-car file
+     */
+    public static File getBlobFile(File file) {
+        return new File(file.getPath() + BLOB_SUFFIX);
+    }
+
+    /**
+     * Marshals the given element using the configured codec.<br>
+     * The direct codec gets also used if id references, a type dictionary or a string table should be written.
+     * 
+     * @param el The element
+     * @param writer The writer to use
+     * @param blobs The writer for the side-car file or null
+     * @param pm The monitor of the operation
+     */
+    @SuppressWarnings("rawtypes")
+    private void marshal(IDataElement el, HierarchicalStreamWriter writer, BlobWriter blobs, IProgressMonitor pm) {
+        final DataHolder options = new MapBackedDataHolder();
+        options.put(TypeNameCache.KEY, typeNames);
+        options.put(ElementMarshallingHelper.PROGRESS_MONITOR, pm);
+        if (blobs != null)
+            options.put(BlobWriter.KEY, blobs);
+        if (omitDefaults)
+            options.put(ElementMarshallingHelper.OMIT_DEFAULTS, Boolean.TRUE);
+        options.put(ArrayEncoding.KEY, arrayEncoding);
+        if (typeDictionary)
+            options.put(HeaderDictionary.TYPES_KEY, Boolean.TRUE);
+        if (stringTable)
+            options.put(HeaderDictionary.STRINGS_KEY, Boolean.TRUE);
+        // id references and the dictionary are only supported by the direct codec
+        if (direct || idReferences || typeDictionary || stringTable)
+            new ElementWriter(this, writer, idReferences).write(el, options);
+        else
+            stream.marshal(el, writer, options);
+    }
+
+    /**
+     * Creates the writer for the given format.
+     * 
+     * @param out The destination stream
+     * @param format The format to write
+     * @return The writer
+     * @throws IOException If something went wrong
+     */
+    private HierarchicalStreamWriter createWriter(OutputStream out, DataFormat format) throws IOException {
+        format.writeHeader(out);
+        if (format == DataFormat.BINARY)
+            return new BinaryStreamWriter(out);
+        final Writer w = new OutputStreamWriter(out, ENCODING);
+        w.write(XML_HEADER);
+        return compact ? new CompactWriter(w) : new PrettyPrintWriter(w);
+    }
+
+    /**
+     * Replaces the given destination file by the passed source file.<br>
+     * A plain rename is atomic on most platforms - if it fails (f.e. on windows if the destination exists) the destination gets moved aside first and restored
+     * if the source could not be moved.
+     * 
+     * @param src The file to move
+     * @param dest The file to replace
+     * @throws IOException If the file could not be replaced
+     */
+    private static void replace(File src, File dest) throws IOException {
+        if (src.renameTo(dest))
+            return;
+        if (!dest.exists())
+            throw new IOException("Unable to rename " + src + " to " + dest);
+        final File backup = moveAside(dest);
+        if (!src.renameTo(dest)) {
+            backup.renameTo(dest);
+            throw new IOException("Unable to rename " + src + " to " + dest);
+        }
+        backup.delete();
+    }
+
+    /**
+     * Moves the given file aside.<br>
+     * The backup gets a new unique name next to the file, so no existing file gets overwritten.
+     * 
+     * @param file The file to move
+     * @return The backup
+     * @throws IOException If the file could not be moved
+     */
+    private static File moveAside(File file) throws IOException {
+        final File backup = File.createTempFile(file.getName(), TMP_SUFFIX, file.getAbsoluteFile().getParentFile());
+        // the reserved name gets taken over by the file (renaming onto an existing file fails on some platforms)
+        if (!backup.delete() || !file.renameTo(backup)) {
+            backup.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        return backup;
+    }
+
+    /**
+     * Reads a {@link IDataElement} from the given {@link InputStream}.<br>
+     * The format of the content and a gzip compression get detected automatically. The passed stream will be closed by this method.
+     * 
+     * @param in The inputstream
+     * @return The contained {@link IDataElement}
+     * @throws IOException If something went wrong
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
     /**
      * Reads a {@link IDataElement} from the given {@link InputStream}.<br>
-     * The passed stream will be closed by this method.
+     * The format of the content and a gzip compression get detected automatically. The passed stream will be closed by this method.<br>
+     * Arrays stored in the side-car file of the given location are not loaded until their entries get accessed.<br>
+     * In the prescan mode the content gets scanned for the referenced types, which are then resolved in one batch (see
+     * {@link TypeCache#resolve(IJavaProject, java.util.Collection, org.eclipse.core.runtime.IProgressMonitor)}). The scan reads the file at the given
+     * location, only a content without location gets buffered for it.<br>
+     * If enabled the model of a file with a known location (and without side-car file) gets restored from the {@link SnapshotCache} if the same content was
+     * already read - otherwise a snapshot of the read model gets stored. The content gets read twice in this case: the passed stream is only used to compute
+     * the key of the snapshot, the model gets parsed from the location (so the content is never held in memory).<br>
+     * If a lazy depth is set the file gets read by the direct codec and the content of the structures from this depth on is only read when it gets accessed
+     * (the snapshot cache is not used in this case, since storing a snapshot would read the whole model).
      * 
      * @param in The inputstream
+     * @param location The location of the data file or null if unknown (the content must not reference a side-car file in this case)
      * @return The contained {@link IDataElement}
+     * @throws IOException If something went wrong
      */
     @SuppressWarnings("rawtypes")
-    public IDataElement read(InputStream in) {
+    public IDataElement read(InputStream in, File location) throws IOException {
+        return read(in, location, null, null);
+    }
+
+    /**
+     * Reads a {@link IDataElement} from the given {@link InputStream} (see {@link #read(InputStream, File)}).<br>
+     * If the file gets read by the direct codec the given listener gets the first children of a root collection or map handed out while the rest of the
+     * file gets still read (the listener does not affect the choice of the codec). No snapshot gets stored if something was handed out, since the model
+     * may already be modified at the end of the read.<br>
+     * The read bytes of the (raw) content are reported to the given monitor (including the ones read to compute the key of the snapshot).
+     * 
+     * @param in The inputstream
+     * @param location The location of the data file or null if unknown (the content must not reference a side-car file in this case)
+     * @param listener The listener to notify about the read children of the root element or null
+     * @param pm The monitor to report the progress to or null
+     * @return The contained {@link IDataElement}
+     * @throws IOException If something went wrong
+     * @throws OperationCanceledException If the monitor was canceled
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(InputStream in, File location, IReadListener listener, IProgressMonitor pm) throws IOException {
+        if (pm == null)
+            pm = new NullProgressMonitor();
         try {
-            return (IDataElement) stream.fromXML(in);
+            // the prescan reads the file a second time
+            final int passes = prescan ? 2 : 1;
+            if (snapshotCacheSize == 0 || lazyDepth > 0 || location == null || getBlobFile(location).exists()) {
+                final long bytes = location != null && location.isFile() ? passes * location.length() : -1;
+                beginTask(pm, "Reading " + (location != null ? location.getName() : "data"), bytes);
+                return read0(new MonitoredInputStream(in, pm), location, listener, pm);
+            }
+            // the content gets read once more to compute the key
+            beginTask(pm, "Reading " + location.getName(), (passes + 1) * location.length());
+            final SnapshotCache snapshots = Activator.getSnapshotCache();
+            final String key = SnapshotCache.getKey(project, new MonitoredInputStream(in, pm));
+            final IDataElement snapshot = readSnapshot(snapshots, key, pm);
+            if (snapshot != null)
+                return snapshot;
+            final Publication publication = listener != null ? new Publication(listener) : null;
+            final InputStream content = new FileInputStream(location);
+            final IDataElement res;
+            try {
+                res = read0(new MonitoredInputStream(content, pm), location, publication, pm);
+            } finally {
+                try {
+                    content.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (publication == null || !publication.published)
+                writeSnapshot(snapshots, key, res);
+            return res;
+        } catch (RuntimeException e) {
+            throw canceled(e, pm);
         } finally {
             try {
                 in.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            pm.done();
         }
     }
 
+    /**
+     * Begins the task of the given monitor.
+     * 
+     * @param pm The monitor
+     * @param name The name of the task
+     * @param bytes The expected number of bytes or -1 if unknown
+     */
+    private static void beginTask(IProgressMonitor pm, String name, long bytes) {
+        pm.beginTask(name, bytes < 0 ? IProgressMonitor.UNKNOWN : (int) Math.min(Integer.MAX_VALUE, bytes / WORK_UNIT));
+    }
+
+    /**
+     * Returns the exception to throw for the given one.<br>
+     * Codecs and parsers may wrap the {@link OperationCanceledException} of a canceled operation - it gets restored in this case.
+     * 
+     * @param e The exception
+     * @param pm The monitor of the operation
+     * @return The exception to throw
+     */
+    private static RuntimeException canceled(RuntimeException e, IProgressMonitor pm) {
+        if (!pm.isCanceled() || e instanceof OperationCanceledException)
+            return e;
+        final OperationCanceledException res = new OperationCanceledException();
+        res.initCause(e);
+        return res;
+    }
+
+    /**
+     * Reads a {@link IDataElement} from the given {@link InputStream} (see {@link #read(InputStream, File, IReadListener, IProgressMonitor)}).
+     * 
+     * @param in The inputstream (will not be closed)
+     * @param location The location of the data file or null if unknown
+     * @param listener The listener to notify about the read children of the root element or null
+     * @param pm The monitor of the operation
+     * @return The contained {@link IDataElement}
+     * @throws IOException If something went wrong
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElement read0(InputStream in, File location, IReadListener listener, IProgressMonitor pm) throws IOException {
+        in = decode(in);
+        final DataFormat format = DataFormat.detect(in);
+        final HierarchicalStreamReader reader;
+        if (!prescan) {
+            reader = createReader(in, format);
+        } else if (location != null && location.isFile()) {
+            // the scan reads the file on it's own, so the content is never held in memory
+            resolveTypes(location, pm);
+            reader = createReader(in, format);
+        } else {
+            final byte[] content = readFully(in);
+            resolveTypes(createReader(new ByteArrayInputStream(content), format), pm);
+            reader = createReader(new ByteArrayInputStream(content), format);
+        }
+        final DataHolder options = createOptions(location);
+        options.put(ElementMarshallingHelper.PROGRESS_MONITOR, pm);
+        // id referenced files and files with a dictionary can only be read by the direct codec - deferred subtrees as well
+        if (direct || lazyDepth > 0 || ElementReader.requiresDirectCodec(reader))
+            return new ElementReader(this, reader, lazyDepth > 0 ? createSubtreeSource(location) : null).read(options, listener);
+        return (IDataElement) stream.unmarshal(reader, null, options);
+    }
+
+    /**
+     * Creates the source re-opening the given file for the deferred subtrees.<br>
+     * The subtrees get located by their node path, so the file gets parsed up to them again. Compressed files would have to be inflated up to them on
+     * each access, so their subtrees keep their binary token image in memory - as the ones of a content without location.
+     * 
+     * @param location The location of the data file or null if unknown
+     * @return The source or null if the subtrees have to keep their image
+     */
+    private ElementReader.Source createSubtreeSource(final File location) {
+        if (location == null || !location.isFile() || DataFormat.isCompressed(location))
+            return null;
+        final long modified = location.lastModified();
+        final long length = location.length();
+        final HierarchicalStreamDriver driver = readDriver instanceof StaxDriver ? readDriver : new StaxDriver();
+        return new ElementReader.Source() {
+            @Override
+            public HierarchicalStreamReader open() {
+                // the node paths are only valid for the read content
+                if (location.lastModified() != modified || location.length() != length)
+                    throw new ConversionException(location + " was modified since it was read, the deferred elements can't be loaded anymore");
+                try {
+                    final InputStream file = new FileInputStream(location);
+                    boolean opened = false;
+                    try {
+                        final InputStream content = decode(file);
+                        final HierarchicalStreamReader reader = createReader(content, DataFormat.detect(content), driver);
+                        opened = true;
+                        return new ReaderWrapper(reader) {
+                            @Override
+                            public void close() {
+                                super.close();
+                                try {
+                                    file.close();
+                                } catch (IOException e) {
+                                    e.printStackTrace();
+                                }
+                            }
+                        };
+                    } finally {
+                        if (!opened)
+                            file.close();
+                    }
+                } catch (IOException e) {
+                    throw new StreamException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the element at the given path from the given {@link InputStream} without building the rest of the model.<br>
+     * The path consists of attribute names and zero based indices of collection entries separated by '/', f.e. <code>/orders/17/customer</code> (the index
+     * of a map entry addresses it's value). The file gets read by a pull parser which skips the subtrees besides the path, references into them are resolved
+     * by additional passes which read the file at the given location again (only a content without location gets buffered for them). The passed stream
+     * will be closed by this method.
+     * 
+     * @param in The inputstream
+     * @param location The location of the data file or null if unknown (the content must not reference a side-car file in this case)
+     * @param path The path of the element
+     * @return The element (null if the path denotes a null value)
+     * @throws IOException If something went wrong
+     * @throws ConversionException If the path does not exist
+     */
+    @SuppressWarnings("rawtypes")
+    public IDataElement read(InputStream in, final File location, String path) throws IOException {
+        // the streams opened for the additional passes
+        final List<InputStream> opened = new ArrayList<InputStream>();
+        try {
+            final InputStream src = decode(in);
+            final DataFormat format = DataFormat.detect(src);
+            final HierarchicalStreamDriver driver = readDriver instanceof StaxDriver ? readDriver : new StaxDriver();
+            final HierarchicalStreamReader reader;
+            final ElementReader.Source source;
+            if (location != null && location.isFile()) {
+                reader = createReader(src, format, driver);
+                source = new ElementReader.Source() {
+                    @Override
+                    public HierarchicalStreamReader open() {
+                        try {
+                            final InputStream file = new FileInputStream(location);
+                            opened.add(file);
+                            final InputStream content = decode(file);
+                            return createReader(content, DataFormat.detect(content), driver);
+                        } catch (IOException e) {
+                            throw new StreamException(e);
+                        }
+                    }
+                };
+            } else {
+                final byte[] content = readFully(src);
+                source = new ElementReader.Source() {
+                    @Override
+                    public HierarchicalStreamReader open() {
+                        return createReader(new ByteArrayInputStream(content), format, driver);
+                    }
+                };
+                reader = source.open();
+            }
+            return new ElementReader(this, reader).read(createOptions(location), source, path);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            for (InputStream file : opened)
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+    /**
+     * Creates the options for reading a file.
+     * 
+     * @param location The location of the data file or null if unknown
+     * @return The options
+     */
+    DataHolder createOptions(File location) {
+        final DataHolder options = new MapBackedDataHolder();
+        options.put(TypeNameCache.KEY, typeNames);
+        if (location != null)
+            options.put(BlobReader.KEY, new BlobReader(getBlobFile(location), this));
+        return options;
+    }
+
+    /**
+     * Restores the model from the given snapshot.
+     * 
+     * @param snapshots The snapshot cache
+     * @param key The key of the snapshot
+     * @param pm The monitor of the operation
+     * @return The model or null if there is no valid snapshot
+     * @throws OperationCanceledException If the monitor was canceled
+     */
+    @SuppressWarnings("rawtypes")
+    private IDataElement readSnapshot(SnapshotCache snapshots, String key, IProgressMonitor pm) {
+        final InputStream in = snapshots.open(key, project);
+        if (in == null)
+            return null;
+        try {
+            final DataHolder options = new MapBackedDataHolder();
+            options.put(TypeNameCache.KEY, typeNames);
+            options.put(ElementMarshallingHelper.PROGRESS_MONITOR, pm);
+            return new ElementReader(this, new BinaryStreamReader(in)).read(options);
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // the file gets read as usual
+            e.printStackTrace();
+            snapshots.remove(key);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stores a snapshot of the given model.<br>
+     * The snapshot is written by the direct codec with id references and base64 encoded arrays. Attributes which were not in the read file are omitted, so
+     * the restored model has the same attribute states.
+     * 
+     * @param snapshots The snapshot cache
+     * @param key The key of the snapshot
+     * @param el The read model
+     */
+    @SuppressWarnings("rawtypes")
+    private void writeSnapshot(SnapshotCache snapshots, String key, IDataElement el) {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            final HierarchicalStreamWriter writer = new BinaryStreamWriter(out);
+            final DataHolder options = new MapBackedDataHolder();
+            options.put(TypeNameCache.KEY, typeNames);
+            options.put(ArrayEncoding.KEY, ArrayEncoding.BASE64);
+            options.put(ElementMarshallingHelper.SKIP_ADDED, Boolean.TRUE);
+            new ElementWriter(this, writer, true).write(el, options);
+            writer.close();
+            snapshots.store(key, project, el, out.toByteArray(), snapshotCacheSize);
+        } catch (RuntimeException e) {
+            // the model is fine - only the snapshot is missing
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the remaining content of the given stream.
+     * 
+     * @param in The stream
+     * @return The content
+     * @throws IOException If something went wrong
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        final byte[] buf = new byte[BUFFER_SIZE];
+        for (int cnt = in.read(buf); cnt > -1; cnt = in.read(buf))
+            out.write(buf, 0, cnt);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the decompressed content of the given raw stream.
+     * 
+     * @param in The raw stream
+     * @return The content (supporting {@link InputStream#mark(int)}, positioned on the format header)
+     * @throws IOException If something went wrong
+     */
+    private static InputStream decode(InputStream in) throws IOException {
+        if (!in.markSupported())
+            in = new BufferedInputStream(in, BUFFER_SIZE);
+        if (DataFormat.isCompressed(in))
+            in = new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        return in;
+    }
+
+    /**
+     * Resolves the types referenced by the given file in one batch (see {@link #resolveTypes(HierarchicalStreamReader, IProgressMonitor)}).
+     * 
+     * @param location The data file
+     * @param pm The monitor of the operation (the read bytes get reported to it)
+     * @throws IOException If something went wrong
+     */
+    private void resolveTypes(File location, IProgressMonitor pm) throws IOException {
+        final InputStream in = new FileInputStream(location);
+        try {
+            final InputStream content = decode(new MonitoredInputStream(in, pm));
+            resolveTypes(createReader(content, DataFormat.detect(content)), pm);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Resolves the types referenced by the given document in one batch.<br>
+     * The resolved types end up in the {@link TypeCache} used by the unmarshalling pass.
+     * 
+     * @param reader The reader positioned on the root node
+     * @param pm The monitor of the operation
+     * @throws OperationCanceledException If the monitor was canceled
+     */
+    private void resolveTypes(HierarchicalStreamReader reader, IProgressMonitor pm) {
+        final Set<String> names = new TypePrescanner(this).scan(reader, pm);
+        reader.close();
+        try {
+            Activator.getTypeCache().resolve(project, names, new SubProgressMonitor(pm, 0));
+        } catch (JavaModelException e) {
+            // the types get resolved one by one while unmarshalling
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the reader for the given format.
+     * 
+     * @param in The source stream (already positioned after the format header)
+     * @param format The format of the stream
+     * @return The reader
+     */
+    private HierarchicalStreamReader createReader(InputStream in, DataFormat format) {
+        return createReader(in, format, readDriver);
+    }
+
+    /**
+     * Creates the reader for the given format.
+     * 
+     * @param in The source stream (already positioned after the format header)
+     * @param format The format of the stream
+     * @param driver The driver to use for XML content
+     * @return The reader
+     */
+    private static HierarchicalStreamReader createReader(InputStream in, DataFormat format, HierarchicalStreamDriver driver) {
+        if (format == DataFormat.BINARY)
+            return new BinaryStreamReader(in);
+        return driver.createReader(in);
+    }
+
     /**
      * Returns the owning project
      * 
@@ -102,6 +826,33 @@ public class XStreamAdapter {
         return project;
     }
 
+    /**
+     * Returns the converter for the {@link IDataElement}s.
+     * 
+     * @return The converter
+     */
+    DispatchingConverter getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Returns the converter lookup of the {@link XStream}.
+     * 
+     * @return The converter lookup
+     */
+    ConverterLookup getConverterLookup() {
+        return stream.getConverterLookup();
+    }
+
+    /**
+     * Returns the element depth from which the content of structures gets deferred (see {@link ElementReader}).
+     * 
+     * @return The depth (0 to read everything at once)
+     */
+    int getLazyDepth() {
+        return lazyDepth;
+    }
+
     /**
      * Returns the fully qualified name for a given alias/name.
      * 
@@ -154,10 +905,8 @@ public class XStreamAdapter {
          * Configures the {@link XStream}.
          */
         private void configure() {
-            final DispatchingConverter conv = new DispatchingConverter();
-            for (IDataElementConverter<?> c : ExtensionPointHelper.getXStreamConverters())
-                conv.registerConverter(c);
-            registerConverter(conv, XStream.PRIORITY_VERY_HIGH);
+            dispatcher.loadContributions();
+            registerConverter(dispatcher, XStream.PRIORITY_VERY_HIGH);
         }
 
         /**
@@ -203,4 +952,35 @@ public class XStreamAdapter {
             return new ElementMarshaller(XStreamAdapter.this, writer, converterLookup, mapper, ReferenceByXPathMarshallingStrategy.RELATIVE);
         }
     }
+
+    /**
+     * {@link IReadListener} remembering if children were handed out.
+     * 
+     * @author M. Hautle
+     */
+    private static final class Publication implements IReadListener {
+        /** The wrapped listener. */
+        private final IReadListener listener;
+
+        /** Flag indicating if {@link #listener} was notified. */
+        boolean published;
+
+        /**
+         * Default constructor.
+         * 
+         * @param listener The wrapped listener
+         */
+        Publication(IReadListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void childrenRead(IDataElement<IAttribute> root, int count) {
+            published = true;
+            listener.childrenRead(root, count);
+        }
+    }
 }
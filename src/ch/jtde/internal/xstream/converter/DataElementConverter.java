@@ -10,6 +10,8 @@ package ch.jtde.internal.xstream.converter;
 
 import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
 import java.util.*;
+import java.util.concurrent.*;
+import ch.jtde.*;
 import ch.jtde.internal.model.*;
 import ch.jtde.internal.xstream.*;
 import ch.jtde.model.*;
@@ -25,17 +27,31 @@ public class DataElementConverter implements IDataElementConverter<DataElement>
     /** Name of the attribute holding the concrete type of an field. */
     private static final String CLASS_ATTRIBUTE = "class";
 
+    /** The field layouts by type (shared by all elements of a type). */
+    private final Map<ClassDefinition, FieldLayout> layouts = new ConcurrentHashMap<ClassDefinition, FieldLayout>();
+
+    /** The {@link TypeCache#getStructureGeneration()} for which {@link #layouts} were computed. */
+    private volatile int generation;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void marshal(DataElement source, HierarchicalStreamWriter writer, IElementMarshallingContext context) {
+        final boolean omitDefaults = isOmitDefaults(context);
+        final boolean skipAdded = isSkipAdded(context);
         for (int i = 0, cnt = source.getChildCount(); i < cnt; i++) {
             final ElementAttribute attr = source.getChild(i);
             final IDataElement<IAttribute> value = attr.getValue();
             // skip empty attributes
             if (value == null)
                 continue;
+            // skip attributes which were not in the read file (they get added again on read)
+            if (skipAdded && attr.getState() == AttributeState.ADDED)
+                continue;
+            // skip primitives with their default value (the factory creates them on read)
+            if (omitDefaults && attr.getLowerBound().getCategory().isPrimitive() && isDefaultPrimitive(value))
+                continue;
             writer.startNode(attr.getName());
             // store name of concrete type if it's not the same as the declared field type
             final ClassDefinition concreteType = value.getType();
@@ -52,10 +68,13 @@ public class DataElementConverter implements IDataElementConverter<DataElement>
     @Override
     public DataElement unmarshal(HierarchicalStreamReader reader, IElementUnmarshallingContext context) {
         final DataElement element = context.<ElementAttribute, DataElement> getCurrentElement();
-        final Map<String, ElementAttribute> attrs = getAttributes(element);
+        final FieldLayout layout = getLayout(element);
+        // the element was just created - so nobody is interested in the state changes
+        // omitted primitives are defined - they hold already the default value set by the factory
+        element.initAttributeStates(AttributeState.ADDED, !isOmitDefaults(context));
         while (reader.hasMoreChildren()) {
             reader.moveDown();
-            final ElementAttribute attr = attrs.get(reader.getNodeName());
+            final ElementAttribute attr = layout.getAttribute(element, reader.getNodeName());
             // skip unknown fields...
             if (attr == null) {
                 reader.moveUp();
@@ -63,7 +82,7 @@ public class DataElementConverter implements IDataElementConverter<DataElement>
             }
             final String concreteType = reader.getAttribute(CLASS_ATTRIBUTE);
             createAttributeContent(element, attr, concreteType, context);
-            attr.setState(AttributeState.DEFINED);
+            attr.initState(AttributeState.DEFINED);
             reader.moveUp();
         }
         return element;
@@ -112,19 +131,25 @@ public class DataElementConverter implements IDataElementConverter<DataElement>
     }
 
     /**
-     * Returns the attributes of the given {@link DataElement} as map.
+     * Returns the field layout of the given element's type.
      * 
      * @param element The element
-     * @return The attributes as map
+     * @return The layout
      */
-    private Map<String, ElementAttribute> getAttributes(DataElement element) {
-        final Map<String, ElementAttribute> res = new HashMap<String, ElementAttribute>();
-        for (int i = 0, cnt = element.getChildCount(); i < cnt; i++) {
-            final ElementAttribute attr = element.getChild(i);
-            res.put(attr.getName(), attr);
-            attr.setState(AttributeState.ADDED);
+    private FieldLayout getLayout(DataElement element) {
+        // the layouts are dropped if the fields of a type may have changed
+        final int gen = Activator.getTypeCache().getStructureGeneration();
+        if (gen != generation) {
+            layouts.clear();
+            generation = gen;
         }
-        return res;
+        final ClassDefinition type = element.getType();
+        FieldLayout layout = layouts.get(type);
+        if (layout == null || layout.size != element.getChildCount()) {
+            layout = new FieldLayout(element);
+            layouts.put(type, layout);
+        }
+        return layout;
     }
 
     /**
@@ -135,4 +160,50 @@ public class DataElementConverter implements IDataElementConverter<DataElement>
     public boolean canConvert(Class type) {
         return DataElement.class.equals(type);
     }
+
+    /**
+     * The attribute index of a type by attribute name.<br>
+     * If a name occurs more than once (a field hiding one of a super class) the last attribute wins.
+     * 
+     * @author M. Hautle
+     */
+    private static final class FieldLayout {
+        /** The attribute indices by name. */
+        private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+        /** The number of attributes. */
+        final int size;
+
+        /**
+         * Default constructor.
+         * 
+         * @param element A element of the type
+         */
+        FieldLayout(DataElement element) {
+            size = element.getChildCount();
+            for (int i = 0; i < size; i++)
+                slots.put(element.getChild(i).getName(), Integer.valueOf(i));
+        }
+
+        /**
+         * Returns the attribute with the given name.
+         * 
+         * @param element The element (of the layout's type)
+         * @param name The attribute name
+         * @return The attribute or null if it does not exist
+         */
+        ElementAttribute getAttribute(DataElement element, String name) {
+            final Integer slot = slots.get(name);
+            if (slot == null)
+                return null;
+            final ElementAttribute attr = element.getChild(slot.intValue());
+            if (name.equals(attr.getName()))
+                return attr;
+            // the element differs from the layout - look it up directly
+            for (int i = element.getChildCount() - 1; i >= 0; i--)
+                if (name.equals(element.getChild(i).getName()))
+                    return element.getChild(i);
+            return null;
+        }
+    }
 }
@@ -9,11 +9,12 @@
 package ch.jtde.internal.xstream.converter;
 
 import static ch.jtde.internal.xstream.ElementMarshallingHelper.*;
-import org.eclipse.jdt.core.*;
 import ch.jtde.internal.model.*;
 import ch.jtde.internal.model.PrimitiveValue.Type;
+import ch.jtde.internal.xstream.*;
 import ch.jtde.model.*;
 import ch.jtde.xstream.*;
+import com.thoughtworks.xstream.converters.*;
 import com.thoughtworks.xstream.core.util.*;
 import com.thoughtworks.xstream.io.*;
 
@@ -31,13 +32,40 @@ public class IndexCollectionElementConverter implements IDataElementConverter<In
      */
     @Override
     public void marshal(IndexCollectionElement source, HierarchicalStreamWriter writer, IElementMarshallingContext context) {
+        final BlobWriter blobs = (BlobWriter) context.get(BlobWriter.KEY);
+        if (blobs != null && blobs.accepts(source)) {
+            blobs.write(source, writer);
+            return;
+        }
+        if (blobs != null && blobs.acceptsChunks(source)) {
+            blobs.writeChunks(source, writer, context);
+            return;
+        }
         final SpecialConverter conv = getSpecialConverter(source.getType(), source.getValueType());
-        if (conv != null)
+        if (conv != null) {
             conv.marshal(source, writer, context);
+            return;
+        }
+        final ArrayEncoding encoding = getBulkEncoding(source, context);
+        if (encoding != ArrayEncoding.ELEMENTS)
+            PrimitiveArrayCodec.marshal(source, writer, encoding);
         else
             marshal0(source, writer, context);
     }
 
+    /**
+     * Returns the encoding to use for the given collection.
+     * 
+     * @param source The collection
+     * @param context The marshalling context
+     * @return The bulk encoding or {@link ArrayEncoding#ELEMENTS} for one node per entry
+     */
+    private ArrayEncoding getBulkEncoding(IndexCollectionElement source, IElementMarshallingContext context) {
+        if (!PrimitiveArrayCodec.canConvert(source.getType(), source.getValueType()))
+            return ArrayEncoding.ELEMENTS;
+        return ArrayEncoding.get(context).select(source.getChildCount());
+    }
+
     /**
      * Marshalls the given collection as 'ordinary' collection/array.
      * 
@@ -82,9 +110,28 @@ public class IndexCollectionElementConverter implements IDataElementConverter<In
     @Override
     public IndexCollectionElement unmarshal(HierarchicalStreamReader reader, IElementUnmarshallingContext context) {
         final IndexCollectionElement element = context.<IndexCollectionAttribute, IndexCollectionElement> getCurrentElement();
+        final String blob = reader.getAttribute(BlobWriter.BLOB_ATTRIBUTE);
+        if (blob != null) {
+            final BlobReader blobs = (BlobReader) context.get(BlobReader.KEY);
+            if (blobs == null)
+                throw new ConversionException("The side-car file of the blob " + blob + " is unknown!");
+            blobs.read(element, blob);
+            return element;
+        }
+        final String chunks = reader.getAttribute(BlobWriter.CHUNKS_ATTRIBUTE);
+        if (chunks != null) {
+            final BlobReader blobs = (BlobReader) context.get(BlobReader.KEY);
+            if (blobs == null)
+                throw new ConversionException("The side-car file of the chunks " + chunks + " is unknown!");
+            blobs.readChunks(element, chunks);
+            return element;
+        }
         final SpecialConverter conv = getSpecialConverter(element.getType(), element.getValueType());
+        final ArrayEncoding encoding = ArrayEncoding.forAttribute(reader.getAttribute(PrimitiveArrayCodec.ENCODING_ATTRIBUTE));
         if (conv != null)
             conv.unmarshal(element, reader, context);
+        else if (encoding != null)
+            PrimitiveArrayCodec.unmarshal(element, reader, encoding);
         else
             unmarshal0(reader, element, context);
         return element;
@@ -178,10 +225,10 @@ public class IndexCollectionElementConverter implements IDataElementConverter<In
          */
         @Override
         public void unmarshal(IndexCollectionElement collection, HierarchicalStreamReader reader, IElementUnmarshallingContext context) {
-            final IJavaProject proj = collection.getValueType().getType().getJavaProject();
+            final ClassDefinition def = Type.CHAR.getDefinition(collection.getValueType().getType().getJavaProject(), null);
             final String str = reader.getValue();
             for (int i = 0, cnt = str.length(); i < cnt; i++) {
-                final PrimitiveValue<Character> val = new PrimitiveValue<Character>(Type.CHAR, proj, null);
+                final PrimitiveValue<Character> val = new PrimitiveValue<Character>(Type.CHAR, def);
                 val.setValue(Character.valueOf(str.charAt(i)));
                 collection.add().setValue(val);
             }
@@ -226,10 +273,10 @@ public class IndexCollectionElementConverter implements IDataElementConverter<In
          */
         @Override
         public void unmarshal(IndexCollectionElement collection, HierarchicalStreamReader reader, IElementUnmarshallingContext context) {
-            final IJavaProject proj = collection.getValueType().getType().getJavaProject();
+            final ClassDefinition def = Type.BYTE.getDefinition(collection.getValueType().getType().getJavaProject(), null);
             final byte[] bytes = ENCODER.decode(reader.getValue());
             for (int i = 0; i < bytes.length; i++) {
-                final PrimitiveValue<Byte> val = new PrimitiveValue<Byte>(Type.BYTE, proj, null);
+                final PrimitiveValue<Byte> val = new PrimitiveValue<Byte>(Type.BYTE, def);
                 val.setValue(Byte.valueOf(bytes[i]));
                 collection.add().setValue(val);
             }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2010 M. Hautle.
+ * 
+ * All rights reserved. This program and the accompanying materials are made available under the terms of the Eclipse Public License v1.0 which accompanies this
+ * distribution, and is available at http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributor: M. Hautle - initial API and implementation
+ */
+package ch.jtde.internal.xstream.converter;
+
+import java.nio.*;
+import ch.jtde.internal.model.*;
+import ch.jtde.internal.model.PrimitiveValue.Type;
+import ch.jtde.internal.xstream.*;
+import ch.jtde.model.*;
+import com.thoughtworks.xstream.core.util.*;
+import com.thoughtworks.xstream.io.*;
+
+/**
+ * Bulk encoding of one dimensional primitive arrays as a single text value (see {@link ArrayEncoding#TEXT} and {@link ArrayEncoding#BASE64}).<br>
+ * The used encoding is stored in the {@link #ENCODING_ATTRIBUTE} of the array node.
+ * 
+ * @author M. Hautle
+ */
+final class PrimitiveArrayCodec {
+    /** Name of the attribute holding the encoding. */
+    static final String ENCODING_ATTRIBUTE = "encoding";
+
+    /** Separator of the {@link ArrayEncoding#TEXT} entries. */
+    private static final char SEPARATOR = ',';
+
+    /** The Base64 encoder to use. */
+    private static final Base64Encoder ENCODER = new Base64Encoder();
+
+    /**
+     * Hidden constructor.
+     */
+    private PrimitiveArrayCodec() {
+    }
+
+    /**
+     * Checks wherever the given array can be bulk encoded.
+     * 
+     * @param type The array type
+     * @param valueType The value type
+     * @return True if it's a one dimensional primitive array
+     */
+    static boolean canConvert(ClassDefinition type, ClassDefinition valueType) {
+        return type.getDimensions() == 1 && valueType.getCategory().isPrimitive();
+    }
+
+    /**
+     * Writes the given array using the passed encoding.
+     * 
+     * @param source The array
+     * @param writer The writer
+     * @param encoding The encoding ({@link ArrayEncoding#TEXT} or {@link ArrayEncoding#BASE64})
+     */
+    static void marshal(IndexCollectionElement source, HierarchicalStreamWriter writer, ArrayEncoding encoding) {
+        writer.addAttribute(ENCODING_ATTRIBUTE, encoding.getAttributeValue());
+        if (encoding == ArrayEncoding.BASE64)
+            writer.setValue(ENCODER.encode(toBytes(source, Type.getType(source.getValueType().getName()))));
+        else
+            writer.setValue(toText(source));
+    }
+
+    /**
+     * Reads the array content using the passed encoding.
+     * 
+     * @param collection The array to populate
+     * @param reader The reader
+     * @param encoding The encoding ({@link ArrayEncoding#TEXT} or {@link ArrayEncoding#BASE64})
+     */
+    static void unmarshal(IndexCollectionElement collection, HierarchicalStreamReader reader, ArrayEncoding encoding) {
+        final Type type = Type.getType(collection.getValueType().getName());
+        // all entries share the same definition
+        final ClassDefinition def = type.getDefinition(collection.getValueType().getType().getJavaProject(), null);
+        if (encoding == ArrayEncoding.BASE64)
+            fromBytes(collection, type, def, ENCODER.decode(reader.getValue()));
+        else
+            fromText(collection, type, def, reader.getValue());
+    }
+
+    /**
+     * Returns the entries of the given array as comma separated text.
+     * 
+     * @param source The array
+     * @return The text
+     */
+    private static String toText(IndexCollectionElement source) {
+        final int cnt = source.getChildCount();
+        final StringBuilder str = new StringBuilder(cnt * 4);
+        for (int i = 0; i < cnt; i++) {
+            if (i > 0)
+                str.append(SEPARATOR);
+            str.append(getValue(source, i));
+        }
+        return str.toString();
+    }
+
+    /**
+     * Adds the entries of the given comma separated text to the array.
+     * 
+     * @param collection The array to populate
+     * @param type The value type
+     * @param def The definition of the value type
+     * @param str The text (null for an empty array)
+     */
+    private static void fromText(IndexCollectionElement collection, Type type, ClassDefinition def, String str) {
+        if (str == null || str.trim().length() == 0)
+            return;
+        final int len = str.length();
+        for (int start = 0; start <= len;) {
+            int end = str.indexOf(SEPARATOR, start);
+            if (end < 0)
+                end = len;
+            add(collection, type, def, type.convert(str.substring(start, end).trim()));
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns the entries of the given array as little endian block.
+     * 
+     * @param source The array
+     * @param type The value type
+     * @return The block
+     */
+    private static byte[] toBytes(IndexCollectionElement source, Type type) {
+        final int cnt = source.getChildCount();
+        final ByteBuffer buf = ByteBuffer.allocate(cnt * getSize(type)).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < cnt; i++) {
+            final Object val = getValue(source, i);
+            switch (type) {
+                case BOOLEAN:
+                    buf.put((byte) (((Boolean) val).booleanValue() ? 1 : 0));
+                    break;
+                case CHAR:
+                    buf.putChar(((Character) val).charValue());
+                    break;
+                case BYTE:
+                    buf.put(((Number) val).byteValue());
+                    break;
+                case SHORT:
+                    buf.putShort(((Number) val).shortValue());
+                    break;
+                case INTEGER:
+                    buf.putInt(((Number) val).intValue());
+                    break;
+                case LONG:
+                    buf.putLong(((Number) val).longValue());
+                    break;
+                case FLOAT:
+                    buf.putFloat(((Number) val).floatValue());
+                    break;
+                case DOUBLE:
+                    buf.putDouble(((Number) val).doubleValue());
+                    break;
+            }
+        }
+        return buf.array();
+    }
+
+    /**
+     * Adds the entries of the given little endian block to the array.
+     * 
+     * @param collection The array to populate
+     * @param type The value type
+     * @param def The definition of the value type
+     * @param bytes The block
+     */
+    private static void fromBytes(IndexCollectionElement collection, Type type, ClassDefinition def, byte[] bytes) {
+        final ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            switch (type) {
+                case BOOLEAN:
+                    add(collection, type, def, Boolean.valueOf(buf.get() != 0));
+                    break;
+                case CHAR:
+                    add(collection, type, def, Character.valueOf(buf.getChar()));
+                    break;
+                case BYTE:
+                    add(collection, type, def, Byte.valueOf(buf.get()));
+                    break;
+                case SHORT:
+                    add(collection, type, def, Short.valueOf(buf.getShort()));
+                    break;
+                case INTEGER:
+                    add(collection, type, def, Integer.valueOf(buf.getInt()));
+                    break;
+                case LONG:
+                    add(collection, type, def, Long.valueOf(buf.getLong()));
+                    break;
+                case FLOAT:
+                    add(collection, type, def, Float.valueOf(buf.getFloat()));
+                    break;
+                case DOUBLE:
+                    add(collection, type, def, Double.valueOf(buf.getDouble()));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by one entry of the given type.
+     * 
+     * @param type The type
+     * @return The size in bytes
+     */
+    private static int getSize(Type type) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case CHAR:
+            case SHORT:
+                return 2;
+            case INTEGER:
+            case FLOAT:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    /**
+     * Returns the value of the given array entry.
+     * 
+     * @param source The array
+     * @param index The index
+     * @return The value
+     */
+    private static Object getValue(IndexCollectionElement source, int index) {
+        return ((PrimitiveValue<?>) source.getChild(index).getValue()).getValue();
+    }
+
+    /**
+     * Appends the given value to the array.
+     * 
+     * @param collection The array
+     * @param type The value type
+     * @param def The definition of the value type
+     * @param value The value
+     */
+    private static void add(IndexCollectionElement collection, Type type, ClassDefinition def, Object value) {
+        final PrimitiveValue<Object> val = new PrimitiveValue<Object>(type, def);
+        val.setValue(value);
+        collection.add().setValue(val);
+    }
+}
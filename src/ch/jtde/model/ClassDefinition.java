@@ -12,7 +12,9 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
 
 /**
- * Definition of a class/type.
+ * Definition of a class/type.<br>
+ * Definitions are compared by name, category and dimensions. The model shares the canonical instances of the
+ * {@link ch.jtde.internal.model.ClassDefinitionRegistry}, so most comparisons end at the identity check.
  * 
  * @author M. Hautle
  */
@@ -8,6 +8,7 @@
  */
 package ch.jtde.xstream;
 
+import org.eclipse.core.runtime.*;
 import ch.jtde.model.*;
 import com.thoughtworks.xstream.converters.*;
 
@@ -24,4 +25,12 @@ public interface IElementMarshallingContext extends MarshallingContext {
      * @return The alias name or the passed one
      */
     String aliasForType(String name);
+
+    /**
+     * Returns the monitor of the marshalling operation.<br>
+     * Converters writing large contents should throw a {@link OperationCanceledException} if it was canceled.
+     * 
+     * @return The monitor
+     */
+    IProgressMonitor getProgressMonitor();
 }
@@ -8,6 +8,7 @@
  */
 package ch.jtde.xstream;
 
+import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.core.*;
 import ch.jtde.model.*;
 import com.thoughtworks.xstream.converters.*;
@@ -54,4 +55,12 @@ public interface IElementUnmarshallingContext extends UnmarshallingContext {
      * @return The fully qualified name
      */
     String typeForAlias(String alias);
+
+    /**
+     * Returns the monitor of the unmarshalling operation.<br>
+     * Converters reading large contents should throw a {@link OperationCanceledException} if it was canceled.
+     * 
+     * @return The monitor
+     */
+    IProgressMonitor getProgressMonitor();
 }